@@ -0,0 +1,24 @@
+package ass1.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the suites with the gc profiler so allocation rate is reported
+// next to throughput and average time.
+//
+// Usage: java -jar benchmarks/target/benchmarks.jar [include-regex]
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length >= 1 ? args[0] : "ass1\\.benchmarks\\..*";
+
+        Options opts = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,71 @@
+package ass1.benchmarks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ass1.common.HtmlBuilder;
+
+// Summary rendering cost, with presigning replaced by a local stub
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlBuilderBenchmark {
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    private Map<String, String> results;
+
+    @Setup
+    public void setup() {
+        String[] types = {"POS", "CONSTITUENCY", "DEPENDENCY"};
+        results = new LinkedHashMap<>();
+
+        for (int i = 0; i < rows; i++) {
+            String type = types[i % types.length];
+            String url = "https://example.org/texts/" + i + ".txt";
+
+            // every 20th row is a worker error, like a typical mixed job
+            String output = (i % 20 == 0)
+                    ? "ERROR: Server returned HTTP response code: 503"
+                    : "results/" + i + "-" + type + ".txt\t" + (i % 7 == 0 ? 1 : 0);
+
+            results.put(String.valueOf(i), type + "\t" + url + "\t" + output);
+        }
+    }
+
+    @Benchmark
+    public String write() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        HtmlBuilder.write(results.values(), List.of(), HtmlBuilderBenchmark::stubPresign, sb);
+        return sb.toString();
+    }
+
+    private static Map<String, String> stubPresign(Collection<String> keys) {
+        Map<String, String> urls = new HashMap<>();
+        for (String key : keys) {
+            urls.put(key, "https://text-jobs-bucket.s3.amazonaws.com/" + key + "?X-Amz-Signature=stub");
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,61 @@
+package ass1.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ass1.common.MessageFormatter;
+
+// Format/parse round trips of the messages on the hot path
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageFormatterBenchmark {
+
+    private static final String URL = "https://www.gutenberg.org/files/1659/1659-0.txt";
+    private static final String JOB_ID = "3f2a7c1e-8d4b-4a3e-9b61-0c5e2d7f8a90";
+    private static final String RESULT_KEY =
+            "results/9c56cc51b374c3ba189210d5b6d4bf57790d351c96c47c02190ecf1e430635ab-DEPENDENCY-corenlp-3.6.0-v2.txt";
+
+    private final String analyzeBody =
+            MessageFormatter.formatAnalyzeTask(List.of("POS", "CONSTITUENCY", "DEPENDENCY"), URL, JOB_ID, List.of(0, 1, 2));
+    private final String workerDoneBody =
+            MessageFormatter.formatWorkerDone(JOB_ID, "DEPENDENCY", URL, 2, RESULT_KEY, 2);
+
+    @Benchmark
+    public String formatAnalyzeTask() {
+        return MessageFormatter.formatAnalyzeTask(List.of("POS", "CONSTITUENCY", "DEPENDENCY"), URL, JOB_ID, List.of(0, 1, 2));
+    }
+
+    @Benchmark
+    public MessageFormatter.AnalyzeFields parseAnalyzeTask() {
+        return MessageFormatter.parseAnalyzeTask(analyzeBody);
+    }
+
+    @Benchmark
+    public String formatWorkerDone() {
+        return MessageFormatter.formatWorkerDone(JOB_ID, "DEPENDENCY", URL, 2, RESULT_KEY, 2);
+    }
+
+    @Benchmark
+    public MessageFormatter.WorkerDoneFields parseWorkerDone() {
+        return MessageFormatter.parseWorkerDone(workerDoneBody);
+    }
+
+    @Benchmark
+    public Object getMessageType() {
+        return MessageFormatter.getMessageType(workerDoneBody);
+    }
+}
@@ -0,0 +1,72 @@
+package ass1.benchmarks;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ass1.worker.TextAnalyzer;
+import ass1.worker.WarmUp;
+
+// performAnalysis for every analysis type over the short/medium/long fixtures
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class TextAnalyzerBenchmark {
+
+    @Param({"POS", "CONSTITUENCY", "DEPENDENCY"})
+    public String analysisType;
+
+    @Param({"short", "medium", "long"})
+    public String document;
+
+    private Path input;
+
+    @Setup
+    public void setup() throws Exception {
+        // Model load is startup cost, not per-document cost
+        WarmUp.run();
+        input = copyFixture(document);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    public long performAnalysis() throws Exception {
+        Path output = TextAnalyzer.performAnalysis(input, analysisType);
+        long size = Files.size(output);
+        Files.delete(output);
+        return size;
+    }
+
+    static Path copyFixture(String name) throws Exception {
+        Path tmp = Files.createTempFile("fixture-" + name + "-", ".txt");
+        try (InputStream in = TextAnalyzerBenchmark.class
+                .getResourceAsStream("/fixtures/" + name + ".txt")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing fixture: " + name);
+            }
+            Files.write(tmp, in.readAllBytes());
+        }
+        return tmp;
+    }
+}
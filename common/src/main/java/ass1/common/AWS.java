@@ -3,6 +3,7 @@ package ass1.common;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.sqs.SqsClient;
 
 public class AWS {
@@ -24,6 +25,11 @@ public class AWS {
             .region(region)
             .build();
 
+    // Signing is local; one presigner resolves credentials once for the whole process
+    private final S3Presigner presigner = S3Presigner.builder()
+            .region(region)
+            .build();
+
     private AWS() {
         System.out.println("[AWS] Initialized clients for region: " + region);
     }
@@ -43,4 +49,8 @@ public class AWS {
     public Ec2Client ec2() {
         return ec2;
     }
+
+    public S3Presigner presigner() {
+        return presigner;
+    }
 }
@@ -22,6 +22,7 @@ public class Ec2Helper {
 
     private static final String managerTagName = "Manager";
     private static final String workerTagName  = "Worker";
+    private static final String poolTagKey = "Pool";
     private static final String ami = "ami-0c398cb65a93047f2"; 
     private static final String keyName = "vockey"; 
     private static final String iamProfile = "LabInstanceProfile"; 
@@ -34,6 +35,11 @@ public class Ec2Helper {
     //  USER DATA BUILDER — משותף למנג'ר ולוורקר
     // ---------------------------------------------------------
     private static String buildUserData(String jarS3Path, String outputJarName) {
+        return buildUserData(jarS3Path, outputJarName, "");
+    }
+
+    // env: "NAME='value' ..." prepended to the java command
+    private static String buildUserData(String jarS3Path, String outputJarName, String env) {
         String bucket = AWS.getInstance().bucketName;
 
         String script =
@@ -51,7 +57,7 @@ public class Ec2Helper {
 
                 "aws s3 cp s3://" + bucket + "/" + jarS3Path + " " + outputJarName + "\n" +
 
-                "nohup java -jar " + outputJarName + " > run.log 2>&1 &\n";
+                env + "nohup java -jar " + outputJarName + " > run.log 2>&1 &\n";
 
         return Base64.getEncoder().encodeToString(script.getBytes());
     }
@@ -115,12 +121,16 @@ public class Ec2Helper {
     // ---------------------------------------------------------
     //  START WORKER
     // ---------------------------------------------------------
-    public static String startWorkerInstance() {
-        String userData = buildUserData("worker/worker.jar", "worker.jar");
+    // The worker only subscribes to its pool's types, and is tagged with the
+    // pool so each pool's fleet can be counted and scaled on its own
+    public static String startWorkerInstance(WorkerPools.Pool pool, InstanceType instanceType) {
+        String env = "WORKER_POOLS='" + WorkerPools.spec() + "' "
+                + "WORKER_TYPES='" + String.join(",", pool.analysisTypes()) + "' ";
+        String userData = buildUserData("worker/worker.jar", "worker.jar", env);
 
         RunInstancesRequest runRequest = RunInstancesRequest.builder()
                 .imageId(ami)
-                .instanceType(MANAGER_INSTANCE_TYPE)
+                .instanceType(instanceType)
                 .minCount(1)
                 .maxCount(1)
                 .keyName(keyName)
@@ -134,24 +144,57 @@ public class Ec2Helper {
 
         ec2.createTags(CreateTagsRequest.builder()
                 .resources(id)
-                .tags(Tag.builder().key("Name").value(workerTagName).build())
+                .tags(Tag.builder().key("Name").value(workerTagName).build(),
+                      Tag.builder().key(poolTagKey).value(pool.name()).build())
                 .build());
 
-        System.out.println("[EC2] Worker instance created: " + id);
+        System.out.println("[EC2] Worker instance created: " + id + " (pool " + pool.name() + ", " + instanceType + ")");
         return id;
     }
 
     // ---------------------------------------------------------
     //  CREATE WORKERS ONLY IF NEEDED
     // ---------------------------------------------------------
-    public static void createWorkers(int requiredCount) {
+    public static void createWorkers(WorkerPools.Pool pool, InstanceType instanceType, int requiredCount) {
 
-        System.out.println("[EC2] Creating " + requiredCount + " new worker(s).");
+        System.out.println("[EC2] Creating " + requiredCount + " new worker(s) in pool " + pool.name() + ".");
         for (int i = 1; i <= requiredCount; i++) {
-            startWorkerInstance();
+            startWorkerInstance(pool, instanceType);
         }
     }
 
+    public static List<Instance> getRunningWorkers() {
+        return getRunningInstances(workerTagName);
+    }
+
+    // pending + running workers of one pool
+    public static List<Instance> getRunningWorkers(String poolName) {
+        DescribeInstancesRequest req = DescribeInstancesRequest.builder()
+                .filters(
+                        Filter.builder().name("tag:Name").values(workerTagName).build(),
+                        Filter.builder().name("tag:" + poolTagKey).values(poolName).build(),
+                        Filter.builder().name("instance-state-name")
+                                .values("pending", "running").build()
+                )
+                .build();
+
+        return ec2.describeInstances(req).reservations().stream()
+                .flatMap(r -> r.instances().stream())
+                .toList();
+    }
+
+    // ---------------------------------------------------------
+    //  TERMINATE SOME WORKERS (scale-down)
+    // ---------------------------------------------------------
+    public static void terminateInstances(List<String> instanceIds) {
+        if (instanceIds.isEmpty()) return;
+
+        ec2.terminateInstances(TerminateInstancesRequest.builder()
+                .instanceIds(instanceIds)
+                .build());
+        System.out.println("[EC2] Terminated " + instanceIds.size() + " worker(s): " + instanceIds);
+    }
+
     // ---------------------------------------------------------
     //  TERMINATE ALL WORKERS
     // ---------------------------------------------------------
@@ -1,48 +1,115 @@
 package ass1.common;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 public class HtmlBuilder {
 
     private static final String BUCKET = "text-jobs-bucket";
 
-    public static String build(Map<String, String> results) {
+    // Output field of a row with no result yet (partial summaries)
+    public static final String PENDING = "PENDING";
 
-        StringBuilder sb = new StringBuilder();
+    // Rows whose output links are presigned together in one parallel call
+    private static final int PRESIGN_WINDOW = 1000;
 
-        sb.append("<html>\n");
-        sb.append("<body>\n");
+    // notes: plain-text lines shown above the rows (e.g. the predicted job time)
+    public static void write(Iterable<String> rows, List<String> notes, Appendable out) throws IOException {
+        write(rows, notes, keys -> S3Helper.generatePresignedUrls(BUCKET, keys), out);
+    }
 
-        results.forEach((key, value) -> {
+    // Rows are written in iteration order (the Manager passes them by input
+    // line), one window at a time, so a large summary never has to fit in
+    // memory. presigner maps a window's S3 keys to their links in one call
+    // (stubbed in benchmarks).
+    public static void write(Iterable<String> rows,
+                             List<String> notes,
+                             Function<Collection<String>, Map<String, String>> presigner,
+                             Appendable out) throws IOException {
 
-            String[] parts = value.split("\t");
+        out.append("<html>\n");
+        out.append("<body>\n");
 
-            String analysis = parts[0];
-            String inputUrl = parts[1];
-            String outputPart = parts[2];
+        for (String note : notes) {
+            out.append("<p>").append(note).append("</p>\n");
+        }
 
-            String inputLink = "<a href=\"" + inputUrl + "\">" + inputUrl + "</a>";
+        List<String> window = new ArrayList<>(PRESIGN_WINDOW);
+        for (String value : rows) {
+            window.add(value);
+            if (window.size() == PRESIGN_WINDOW) {
+                writeWindow(window, presigner, out);
+            }
+        }
+        writeWindow(window, presigner, out);
 
-            String finalOutput;
+        out.append("</body>\n");
+        out.append("</html>\n");
+    }
 
-            if (!outputPart.startsWith("ERROR:")) {
-                String presigned = S3Helper.generatePresignedUrl(BUCKET, outputPart);
-                finalOutput = "<a href=\"" + presigned + "\">" + outputPart + "</a>";
-            } else {
-                finalOutput = outputPart; 
-            }
+    private static void writeWindow(List<String> window,
+                                    Function<Collection<String>, Map<String, String>> presigner,
+                                    Appendable out) throws IOException {
+        if (window.isEmpty()) return;
+
+        List<String> keys = new ArrayList<>(window.size());
+        for (String value : window) {
+            String outputPart = value.split("\t")[2];
+            if (hasLink(outputPart)) keys.add(outputPart);
+        }
 
-            sb.append(analysis)
-              .append(": ")
-              .append(inputLink)
-              .append(" ")
-              .append(finalOutput)
-              .append("<br/>\n");
-        });
+        Map<String, String> urls = presigner.apply(keys);
+
+        for (String value : window) {
+            appendRow(value, urls::get, out);
+        }
+        window.clear();
+    }
+
+    private static boolean hasLink(String outputPart) {
+        return !outputPart.startsWith("ERROR:") && !outputPart.equals(PENDING);
+    }
+
+    private static void appendRow(String value,
+                                  Function<String, String> presigner,
+                                  Appendable out) throws IOException {
+
+        String[] parts = value.split("\t");
+
+        String analysis = parts[0];
+        String inputUrl = parts[1];
+        String outputPart = parts[2];
+
+        String inputLink = "<a href=\"" + inputUrl + "\">" + inputUrl + "</a>";
+
+        String finalOutput;
+
+        if (hasLink(outputPart)) {
+            String presigned = presigner.apply(outputPart);
+            finalOutput = "<a href=\"" + presigned + "\">" + outputPart + "</a>";
+
+            // optional 4th field: sentences that fell back to tagging only
+            if (parts.length > 3 && !parts[3].equals("0")) {
+                finalOutput += " (" + parts[3] + " degraded sentences)";
+            }
+        } else {
+            finalOutput = outputPart;   // ERROR: ... or PENDING
+        }
 
-        sb.append("</body>\n");
-        sb.append("</html>\n");
+        // optional 5th field: retries after transient worker failures
+        if (parts.length > 4 && !parts[4].equals("0")) {
+            finalOutput += " (retried " + parts[4] + "x)";
+        }
 
-        return sb.toString();
+        out.append(analysis)
+           .append(": ")
+           .append(inputLink)
+           .append(" ")
+           .append(finalOutput)
+           .append("<br/>\n");
     }
 }
@@ -1,8 +1,12 @@
 package ass1.common;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class MessageFormatter {
 
     private static final String TAB = "\t";
+    private static final String TYPE_SEPARATOR = ",";
 
     public static MessageType getMessageType(String message) {
         String[] parts = message.trim().split("\\s+");
@@ -27,22 +31,46 @@ public class MessageFormatter {
                 + (terminate ? "terminate" : "NOT-terminate");
     }
 
+    // with a deadline for a partial summary, in seconds from receipt; 0 = none.
+    // Relative, so the Manager dates it with its own clock, not the client's.
+    public static String formatNewTask(String inputFileS3Path,
+                                       int n,
+                                       String callbackQueueName,
+                                       boolean terminate,
+                                       long deadlineSeconds) {
 
-    // parse: NEW_TASK <inputS3> <n> <callbackQueue>
+        return formatNewTask(inputFileS3Path, n, callbackQueueName, terminate)
+                + TAB + deadlineSeconds;
+    }
+
+
+    // parse: NEW_TASK <inputS3> <n> <callbackQueue> <terminate> [deadline]
     public static NewTaskFields parseNewTask(String body) {
         String[] p = body.split(TAB);
         return new NewTaskFields(
                 p[1],               // inputFileS3Path
                 Integer.parseInt(p[2]),
                 p[3],               // callbackQueueName
-                p[4].equals("terminate")
+                p[4].equals("terminate"),
+                p.length > 5 ? Long.parseLong(p[5]) : 0L   // deadlineSeconds (optional)
         );
     }
 
     public record NewTaskFields(String inputFileS3,
                                 int n,
                                 String callbackQueue,
-                                boolean terminate) {}
+                                boolean terminate,
+                                long deadlineSeconds) {
+
+        public boolean hasDeadline() {
+            return deadlineSeconds > 0;
+        }
+
+        // absolute deadline for a task received at receivedMillis; 0 = none
+        public long deadlineMillis(long receivedMillis) {
+            return hasDeadline() ? receivedMillis + deadlineSeconds * 1000 : 0L;
+        }
+    }
 
 
 
@@ -52,58 +80,146 @@ public class MessageFormatter {
 
     public static String formatAnalyzeTask(String analysisType,
                                            String url,
-                                           String jobId) {
+                                           String jobId,
+                                           int taskIndex) {
 
         return MessageType.ANALYZE + TAB
                 + analysisType + TAB
                 + url + TAB
-                + jobId;
+                + jobId + TAB
+                + taskIndex;
     }
 
+    // fused task: several input lines for the same url → "POS,DEPENDENCY" + "3,7"
+    public static String formatAnalyzeTask(List<String> analysisTypes,
+                                           String url,
+                                           String jobId,
+                                           List<Integer> taskIndices) {
+
+        return MessageType.ANALYZE + TAB
+                + String.join(TYPE_SEPARATOR, analysisTypes) + TAB
+                + url + TAB
+                + jobId + TAB
+                + String.join(TYPE_SEPARATOR, taskIndices.stream().map(String::valueOf).toList());
+    }
+
+    // the same task again after a transient failure (attempt counts from 1)
+    public static String formatAnalyzeRetry(AnalyzeFields task, int attempt) {
+        return MessageType.ANALYZE + TAB
+                + task.analysisType() + TAB
+                + task.url() + TAB
+                + task.jobId() + TAB
+                + task.taskIndex() + TAB
+                + attempt;
+    }
+
+    // a task the worker dead-lettered itself after reporting its errors
+    // (still a valid ANALYZE, so the dead-letter queue can be redriven)
+    public static String formatAnalyzeDeadLettered(AnalyzeFields task) {
+        return formatAnalyzeRetry(task, task.attempt()) + TAB + REPORTED;
+    }
+
+    // parse: ANALYZE <types> <url> <jobId> <indices> [attempt [reported]]
     public static AnalyzeFields parseAnalyzeTask(String body) {
         String[] p = body.split(TAB);
         return new AnalyzeFields(
                 p[1],        // analysisType (כמו "POS")
                 p[2],        // url
-                p[3]         // jobId unique
+                p[3],        // jobId unique
+                p[4],        // taskIndex (line number in the input file)
+                p.length > 5 ? Integer.parseInt(p[5]) : 1,   // attempt (optional)
+                p.length > 6 && p[6].equals(REPORTED)         // errors already sent
         );
     }
 
+    private static final String REPORTED = "reported";
+
     public record AnalyzeFields(String analysisType,
                                 String url,
-                                String jobId) { }
+                                String jobId,
+                                String taskIndex,
+                                int attempt,
+                                boolean reported) {
+
+        // one entry per requested output (a single type for plain tasks)
+        public List<String> analysisTypes() {
+            return List.of(analysisType.split(TYPE_SEPARATOR));
+        }
+
+        // task index of each entry in analysisTypes()
+        public List<Integer> taskIndices() {
+            return Arrays.stream(taskIndex.split(TYPE_SEPARATOR))
+                    .map(Integer::parseInt)
+                    .toList();
+        }
+    }
 
 
     // ----------------------------------------------------
     //  WORKER → MANAGER
     // ----------------------------------------------------
 
+    // degradedSentences: sentences that exceeded the parse budget
     public static String formatWorkerDone(String jobId,
                                           String analysisType,
                                           String url,
-                                          String resultInfo) {
+                                          int taskIndex,
+                                          String resultInfo,
+                                          int degradedSentences) {
 
         return MessageType.WORKER_DONE + TAB
                 + jobId + TAB
                 + analysisType + TAB
                 + url + TAB
-                + resultInfo;
+                + taskIndex + TAB
+                + resultInfo + TAB
+                + degradedSentences;
     }
 
+    // with the task's timing for the Manager's cost model: analysis time
+    // (0 = served from cache), input size in bytes, and how many times the
+    // task was retried after transient failures
+    public static String formatWorkerDone(String jobId,
+                                          String analysisType,
+                                          String url,
+                                          int taskIndex,
+                                          String resultInfo,
+                                          int degradedSentences,
+                                          long elapsedMs,
+                                          long inputBytes,
+                                          int retries) {
+
+        return formatWorkerDone(jobId, analysisType, url, taskIndex, resultInfo, degradedSentences)
+                + TAB + elapsedMs
+                + TAB + inputBytes
+                + TAB + retries;
+    }
+
+    // parse: WORKER_DONE <jobId> <type> <url> <index> <result> <degraded> [elapsedMs inputBytes [retries]]
     public static WorkerDoneFields parseWorkerDone(String body) {
         String[] p = body.split(TAB);
         return new WorkerDoneFields(
                 p[1],  // jobId
                 p[2],  // analysisType
                 p[3],  // url
-                p[4]   // resultInfo
+                Integer.parseInt(p[4]),  // taskIndex
+                p[5],  // resultInfo
+                Integer.parseInt(p[6]),  // degradedSentences
+                p.length > 8 ? Long.parseLong(p[7]) : 0L,   // elapsedMs (optional)
+                p.length > 8 ? Long.parseLong(p[8]) : 0L,   // inputBytes (optional)
+                p.length > 9 ? Integer.parseInt(p[9]) : 0   // retries (optional)
         );
     }
 
     public record WorkerDoneFields(String jobId,
                                    String analysisType,
                                    String url,
-                                   String resultInfo) { }
+                                   int taskIndex,
+                                   String resultInfo,
+                                   int degradedSentences,
+                                   long elapsedMs,
+                                   long inputBytes,
+                                   int retries) { }
 
 
     // ----------------------------------------------------
@@ -113,21 +229,32 @@ public class MessageFormatter {
     public static String formatSummaryDone(String jobId,
                                            String summaryS3Path) {
 
+        return formatSummaryDone(jobId, summaryS3Path, false);
+    }
+
+    // partial: sent at the job's deadline, a final summary follows
+    public static String formatSummaryDone(String jobId,
+                                           String summaryS3Path,
+                                           boolean partial) {
+
         return MessageType.SUMMARY_DONE + TAB
                 + jobId + TAB
-                + summaryS3Path;
+                + summaryS3Path + TAB
+                + (partial ? "partial" : "final");
     }
 
     public static SummaryDoneFields parseSummaryDone(String body) {
         String[] p = body.split(TAB);
         return new SummaryDoneFields(
                 p[1],   // jobId
-                p[2]    // summaryS3Path
+                p[2],   // summaryS3Path
+                p.length > 3 && p[3].equals("partial")
         );
     }
 
     public record SummaryDoneFields(String jobId,
-                                    String summaryS3Path) { }
+                                    String summaryS3Path,
+                                    boolean partial) { }
 
     // ----------------------------------------------------
     //  WORKER → MANAGER   (ERROR)
@@ -136,25 +263,46 @@ public class MessageFormatter {
     public static String formatWorkerError(String jobId,
                                         String analysisType,
                                         String url,
+                                        int taskIndex,
                                         String errorMsg) {
 
         return MessageType.WORKER_ERROR + TAB
                 + jobId + TAB
                 + analysisType + TAB
                 + url + TAB
+                + taskIndex + TAB
                 + sanitize(errorMsg);
     }
 
-    // parse: WORKER_ERROR  <jobId> <analysisType> <url> <errorMsg>
+    // with the retries spent on transient failures, and whether the task was
+    // given up on and moved to the dead-letter queue (sanitize keeps tabs out
+    // of errorMsg, so fields can follow it)
+    public static String formatWorkerError(String jobId,
+                                           String analysisType,
+                                           String url,
+                                           int taskIndex,
+                                           String errorMsg,
+                                           int retries,
+                                           boolean deadLettered) {
+
+        return formatWorkerError(jobId, analysisType, url, taskIndex, errorMsg)
+                + TAB + retries
+                + TAB + (deadLettered ? "dead-lettered" : "failed");
+    }
+
+    // parse: WORKER_ERROR  <jobId> <analysisType> <url> <taskIndex> <errorMsg> [retries dead-lettered|failed]
     public static WorkerErrorFields parseWorkerError(String body) {
-        String[] p = body.split(TAB, 5);  
-        // split into max 5 fields → חשוב כדי שההודעה לא תישבר
+        String[] p = body.split(TAB, 8);
+        // split into max 8 fields → חשוב כדי שההודעה לא תישבר
 
         return new WorkerErrorFields(
                 p[1],   // jobId
                 p[2],   // analysisType
                 p[3],   // url
-                p[4]    // error message
+                Integer.parseInt(p[4]),   // taskIndex
+                p[5],   // error message
+                p.length > 7 ? Integer.parseInt(p[6]) : 0,      // retries (optional)
+                p.length > 7 && p[7].equals("dead-lettered")     // deadLettered (optional)
         );
     }
 
@@ -162,7 +310,44 @@ public class MessageFormatter {
     public record WorkerErrorFields(String jobId,
                                     String analysisType,
                                     String url,
-                                    String errorMsg) { }
+                                    int taskIndex,
+                                    String errorMsg,
+                                    int retries,
+                                    boolean deadLettered) { }
+
+    // a task hit a transient failure and was re-queued: attempt nextAttempt
+    // becomes visible to workers in delaySeconds
+    public static String formatWorkerRetry(String jobId,
+                                           String url,
+                                           List<Integer> taskIndices,
+                                           int nextAttempt,
+                                           int delaySeconds) {
+
+        return MessageType.WORKER_RETRY + TAB
+                + jobId + TAB
+                + url + TAB
+                + String.join(TYPE_SEPARATOR, taskIndices.stream().map(String::valueOf).toList()) + TAB
+                + nextAttempt + TAB
+                + delaySeconds;
+    }
+
+    // parse: WORKER_RETRY <jobId> <url> <indices> <nextAttempt> <delaySeconds>
+    public static WorkerRetryFields parseWorkerRetry(String body) {
+        String[] p = body.split(TAB);
+        return new WorkerRetryFields(
+                p[1],   // jobId
+                p[2],   // url
+                Arrays.stream(p[3].split(TYPE_SEPARATOR)).map(Integer::parseInt).toList(),
+                Integer.parseInt(p[4]),
+                Integer.parseInt(p[5])
+        );
+    }
+
+    public record WorkerRetryFields(String jobId,
+                                    String url,
+                                    List<Integer> taskIndices,
+                                    int nextAttempt,
+                                    int delaySeconds) { }
 
     // מנקה טאבים ושורות חדשות בהודעת שגיאה
     private static String sanitize(String msg) {
@@ -6,7 +6,8 @@ public enum MessageType {
     ANALYZE,        
     WORKER_DONE,    
     SUMMARY_DONE,
-    WORKER_ERROR;
+    WORKER_ERROR,
+    WORKER_RETRY;
     
 
 
@@ -0,0 +1,120 @@
+package ass1.common;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+public class ResultCache {
+
+    // Bump whenever the analysis output changes (model, engine, format)
+    public static final String ENGINE_VERSION = "corenlp-3.6.0-v3";
+
+    // How long a url → result pointer is trusted before the url is re-fetched
+    private static final Duration URL_TTL = Duration.ofHours(24);
+
+    private static final String RESULT_KEY_META = "result-key";
+    private static final String DEGRADED_META = "degraded-sentences";
+
+    private static final String BUCKET = AWS.bucketName;
+
+    // A stored result and how many of its sentences fell back to the cheap path
+    public record Entry(String resultKey, int degradedSentences) { }
+
+
+    // ----------------------------------------------------
+    //  KEYS
+    // ----------------------------------------------------
+
+    // results/<sha256(input)>-<type>-<engine>.txt  (content-addressed, never stale)
+    public static String resultKey(String inputSha256, String analysisType) {
+        return "results/" + inputSha256 + "-" + analysisType + "-" + ENGINE_VERSION + ".txt";
+    }
+
+    // results/degraded/<sha256(input)>-<type>-<engine>-<uuid>.txt  (one run only).
+    // Whether a sentence degrades depends on the parse budget and how loaded
+    // the worker was, not only on the input, so such output is never reused.
+    public static String degradedKey(String inputSha256, String analysisType) {
+        return "results/degraded/" + inputSha256 + "-" + analysisType + "-" + ENGINE_VERSION
+                + "-" + UUID.randomUUID() + ".txt";
+    }
+
+    // cache/url/<sha256(url)>-<type>-<engine>  (points at the last result for this url)
+    public static String urlKey(String url, String analysisType) {
+        return "cache/url/" + sha256Hex(url.getBytes(StandardCharsets.UTF_8))
+                + "-" + analysisType + "-" + ENGINE_VERSION;
+    }
+
+
+    // ----------------------------------------------------
+    //  WORKER SIDE
+    // ----------------------------------------------------
+
+    // Existing complete result for this key, or null (degraded ones are misses)
+    public static Entry findResult(String resultKey) {
+        HeadObjectResponse head = S3Helper.headObject(BUCKET, resultKey);
+        if (head == null || degradedOf(head) > 0) return null;
+
+        return new Entry(resultKey, 0);
+    }
+
+    public static void storeResult(String resultKey, Path file, int degradedSentences) {
+        S3Helper.uploadFile(BUCKET, resultKey, file,
+                Map.of(DEGRADED_META, String.valueOf(degradedSentences)));
+    }
+
+    // Record that <url, type> currently resolves to this result (complete ones only)
+    public static void rememberUrl(String url, String analysisType, Entry entry) {
+        if (entry.degradedSentences() > 0) return;
+
+        S3Helper.putString(BUCKET, urlKey(url, analysisType), "",
+                Map.of(RESULT_KEY_META, entry.resultKey(),
+                       DEGRADED_META, String.valueOf(entry.degradedSentences())));
+    }
+
+
+    // ----------------------------------------------------
+    //  MANAGER SIDE
+    // ----------------------------------------------------
+
+    // Result for <url, type> if a fresh entry exists, otherwise null
+    public static Entry lookupFresh(String url, String analysisType) {
+        HeadObjectResponse head = S3Helper.headObject(BUCKET, urlKey(url, analysisType));
+        if (head == null) return null;
+
+        Instant written = head.lastModified();
+        if (written == null || written.plus(URL_TTL).isBefore(Instant.now())) {
+            return null;
+        }
+
+        String resultKey = head.metadata().get(RESULT_KEY_META);
+        if (resultKey == null || degradedOf(head) > 0) return null;
+
+        return new Entry(resultKey, 0);
+    }
+
+    private static int degradedOf(HeadObjectResponse head) {
+        try {
+            return Integer.parseInt(head.metadata().getOrDefault(DEGRADED_META, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+
+    public static String sha256Hex(byte[] bytes) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,21 +1,29 @@
 package ass1.common;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
-
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.core.sync.ResponseTransformer;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
-import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 
@@ -34,6 +42,18 @@ public class S3Helper {
         System.out.printf("[S3] Uploaded: %s → s3://%s/%s%n", filePath, bucketName, key);
     }
 
+    // Upload with user metadata
+    public static void uploadFile(String bucketName, String key, Path filePath, Map<String, String> metadata) {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .metadata(metadata)
+                .build();
+
+        s3.putObject(request, filePath);
+        System.out.printf("[S3] Uploaded: %s → s3://%s/%s%n", filePath, bucketName, key);
+    }
+
     // Download
     public static void downloadFile(String bucket, String key, Path dest) {
         try {
@@ -54,6 +74,21 @@ public class S3Helper {
         }
     }
 
+    // Stream an object without writing it to disk (caller closes the stream)
+    public static InputStream openObject(String bucket, String key) {
+        return openObject(bucket, key, 0);
+    }
+
+    // Same, starting at a byte offset (resumes a stream that was closed)
+    public static InputStream openObject(String bucket, String key, long fromByte) {
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key);
+        if (fromByte > 0) request.range("bytes=" + fromByte + "-");
+
+        return s3.getObject(request.build());
+    }
+
     // Check if exists
     public static boolean fileExists(String bucketName, String key) {
         try {
@@ -70,6 +105,53 @@ public class S3Helper {
         }
     }
 
+    // Small text object with optional user metadata
+    public static void putString(String bucketName, String key, String content, Map<String, String> metadata) {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .metadata(metadata)
+                .build();
+
+        s3.putObject(request, RequestBody.fromString(content));
+    }
+
+    // Head (metadata + last-modified), or null if missing
+    public static HeadObjectResponse headObject(String bucketName, String key) {
+        try {
+            return s3.headObject(
+                HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build()
+            );
+
+        } catch (S3Exception e) {
+            return null;
+        }
+    }
+
+    // All keys under a prefix (follows pagination)
+    public static List<String> listKeys(String bucketName, String prefix) {
+        List<String> keys = new ArrayList<>();
+
+        s3.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix)
+                        .build())
+                .contents()
+                .forEach(o -> keys.add(o.key()));
+
+        return keys;
+    }
+
+    public static void deleteObject(String bucketName, String key) {
+        s3.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
     // Create bucket
     public static void createBucketIfNotExists(String bucketName) {
         try {
@@ -95,32 +177,71 @@ public class S3Helper {
 
 
 
+    // Presigned links are valid for up to 7 days, but a link signed with
+    // temporary (STS / instance role) credentials dies with them, within
+    // hours. So a cached link is only reused for an hour after signing.
+    private static final Duration PRESIGN_DURATION = Duration.ofDays(7);
+    private static final Duration PRESIGN_CACHE_TTL = Duration.ofHours(1);
+    private static final int PRESIGN_CACHE_MAX = 100_000;
+
+    private record SignedUrl(String url, Instant reuseUntil) { }
+
+    private static final ConcurrentHashMap<String, SignedUrl> presignCache = new ConcurrentHashMap<>();
+
     public static String generatePresignedUrl(String bucketName, String key) {
-    try {
-        S3Presigner presigner = S3Presigner.builder()
-                .region(Region.US_EAST_1)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+        String cacheKey = bucketName + "/" + key;
+        Instant now = Instant.now();
 
-        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                .bucket(bucketName)
-                .key(key)
-                .build();
+        SignedUrl cached = presignCache.get(cacheKey);
+        if (cached != null && cached.reuseUntil().isAfter(now)) {
+            return cached.url();
+        }
 
-        PresignedGetObjectRequest presignedRequest = presigner.presignGetObject(
-                GetObjectPresignRequest.builder()
-                        .signatureDuration(Duration.ofDays(7))
-                        .getObjectRequest(getObjectRequest)
-                        .build()
-        );
+        try {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build();
 
-        presigner.close();
-        return presignedRequest.url().toString();
+            PresignedGetObjectRequest presignedRequest = AWS.getInstance().presigner().presignGetObject(
+                    GetObjectPresignRequest.builder()
+                            .signatureDuration(PRESIGN_DURATION)
+                            .getObjectRequest(getObjectRequest)
+                            .build()
+            );
 
-    } catch (Exception e) {
-        System.err.println("[S3Helper] Failed to generate presigned URL: " + e.getMessage());
-        return null;
+            String url = presignedRequest.url().toString();
+
+            if (presignCache.size() >= PRESIGN_CACHE_MAX) {
+                presignCache.values().removeIf(u -> !u.reuseUntil().isAfter(now));
+                if (presignCache.size() >= PRESIGN_CACHE_MAX) presignCache.clear();
+            }
+            Instant reuseUntil = now.plus(PRESIGN_CACHE_TTL);
+            if (presignedRequest.expiration().isBefore(reuseUntil)) reuseUntil = presignedRequest.expiration();
+            presignCache.put(cacheKey, new SignedUrl(url, reuseUntil));
+
+            return url;
+
+        } catch (Exception e) {
+            System.err.println("[S3Helper] Failed to generate presigned URL: " + e.getMessage());
+            return null;
+        }
     }
-}
 
+    // Bulk variant: distinct keys are signed in parallel. Keys that failed
+    // to sign are missing from the returned map.
+    public static Map<String, String> generatePresignedUrls(String bucketName, Collection<String> keys) {
+        Map<String, String> urls = new ConcurrentHashMap<>();
+
+        keys.stream()
+                .distinct()
+                .toList()
+                .parallelStream()
+                .forEach(key -> {
+                    String url = generatePresignedUrl(bucketName, key);
+                    if (url != null) urls.put(key, url);
+                });
+
+        return urls;
+    }
 }
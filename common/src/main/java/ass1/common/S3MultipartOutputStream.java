@@ -0,0 +1,150 @@
+package ass1.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+// Writes an S3 object in parts as it is produced: memory stays at one part
+// buffer whatever the object size, and nothing is written to local disk.
+// Objects smaller than one part are sent with a single putObject.
+public class S3MultipartOutputStream extends OutputStream {
+
+    // S3 minimum for every part but the last is 5 MiB
+    public static final int PART_SIZE = 8 * 1024 * 1024;
+
+    private final S3Client s3 = AWS.getInstance().s3();
+    private final String bucket;
+    private final String key;
+    private final String contentType;
+
+    private final byte[] buffer = new byte[PART_SIZE];
+    private int buffered = 0;
+
+    private String uploadId;   // null until the first full part
+    private final List<CompletedPart> parts = new ArrayList<>();
+    private boolean closed = false;
+    private boolean aborted = false;
+
+    public S3MultipartOutputStream(String bucket, String key, String contentType) {
+        this.bucket = bucket;
+        this.key = key;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (buffered == PART_SIZE) uploadPart();
+        buffer[buffered++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buffered == PART_SIZE) uploadPart();
+
+            int n = Math.min(len, PART_SIZE - buffered);
+            System.arraycopy(b, off, buffer, buffered, n);
+            buffered += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // Completes the upload; on failure the multipart upload is aborted
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+
+        try {
+            if (uploadId == null) {
+                s3.putObject(PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .contentType(contentType)
+                                .build(),
+                        partBody());
+
+                System.out.printf("[S3] Uploaded %d bytes → s3://%s/%s%n", buffered, bucket, key);
+                return;
+            }
+
+            if (buffered > 0) uploadPart();
+
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+
+            System.out.printf("[S3] Multipart upload done (%d parts) → s3://%s/%s%n", parts.size(), bucket, key);
+
+        } catch (RuntimeException e) {
+            abort();
+            throw new IOException("Upload of s3://" + bucket + "/" + key + " failed", e);
+        }
+    }
+
+    // Caller gave up: drop the parts already stored
+    public void abort() {
+        closed = true;
+        if (aborted || uploadId == null) return;
+        aborted = true;
+
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (RuntimeException e) {
+            System.err.println("[S3] Abort of multipart upload failed for " + key + ": " + e.getMessage());
+        }
+    }
+
+    private void uploadPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType(contentType)
+                        .build()).uploadId();
+            }
+
+            int partNumber = parts.size() + 1;
+            String eTag = s3.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .build(),
+                    partBody()).eTag();
+
+            parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            buffered = 0;
+
+        } catch (RuntimeException e) {
+            abort();
+            throw new IOException("Upload of part " + (parts.size() + 1) + " for " + key + " failed", e);
+        }
+    }
+
+    // the buffer is read as-is, without another copy of the part
+    private RequestBody partBody() {
+        return RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, buffered), buffered);
+    }
+}
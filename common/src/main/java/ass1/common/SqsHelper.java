@@ -1,22 +1,42 @@
 package ass1.common;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
 import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
 import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
 import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
 import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
 import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SetQueueAttributesRequest;
 
 public class SqsHelper {
 
     private static final Region region = Region.US_EAST_1; 
     private static final SqsClient sqs = AWS.getInstance().sqs();
 
+    // SQS limit for SendMessageBatch / DeleteMessageBatch
+    public static final int MAX_BATCH = 10;
+    private static final int MAX_BATCH_ATTEMPTS = 5;
+
+
     public static void sendMessage(String queueUrl, String message) {
         SendMessageRequest request = SendMessageRequest.builder()
                 .queueUrl(queueUrl)
@@ -25,6 +45,70 @@ public class SqsHelper {
         sqs.sendMessage(request);
     }
 
+    // Delivered only after delaySeconds (0-900), e.g. a task retried with backoff
+    public static void sendMessage(String queueUrl, String message, int delaySeconds) {
+        SendMessageRequest request = SendMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .messageBody(message)
+                .delaySeconds(delaySeconds)
+                .build();
+        sqs.sendMessage(request);
+    }
+
+    // SendMessageBatch, 10 entries per call; only failed entries are retried
+    // Returns the positions (in messages) of entries still failing after
+    // the retries; the rest are queued
+    public static List<Integer> sendMessageBatch(String queueUrl, List<String> messages) {
+        List<Integer> failed = new ArrayList<>();
+        for (int from = 0; from < messages.size(); from += MAX_BATCH) {
+            List<String> chunk = messages.subList(from, Math.min(from + MAX_BATCH, messages.size()));
+            for (int i : sendBatchWithRetry(queueUrl, chunk)) {
+                failed.add(from + i);
+            }
+        }
+        return failed;
+    }
+
+    private static List<Integer> sendBatchWithRetry(String queueUrl, List<String> chunk) {
+
+        // entry id = index in chunk, so failures map back to their message
+        Map<String, String> pending = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            pending.put(String.valueOf(i), chunk.get(i));
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            List<SendMessageBatchRequestEntry> entries = new ArrayList<>();
+            pending.forEach((id, body) -> entries.add(SendMessageBatchRequestEntry.builder()
+                    .id(id)
+                    .messageBody(body)
+                    .build()));
+
+            SendMessageBatchResponse res = sqs.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+
+            res.successful().forEach(ok -> pending.remove(ok.id()));
+            if (pending.isEmpty()) return List.of();
+
+            if (attempt >= MAX_BATCH_ATTEMPTS) {
+                System.err.println("[SQS] SendMessageBatch: " + pending.size()
+                        + " entries still failing after " + attempt + " attempts: "
+                        + res.failed().get(0).message());
+                return pending.keySet().stream().map(Integer::parseInt).toList();
+            }
+
+            System.err.println("[SQS] Retrying " + pending.size() + " failed batch entries (attempt "
+                    + attempt + ")");
+            try { Thread.sleep(100L << attempt); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while retrying batch send", e);
+            }
+        }
+    }
+
     public static List<Message> receiveMessages(String queueUrl, int maxMessages) {
         ReceiveMessageRequest request = ReceiveMessageRequest.builder()
                 .queueUrl(queueUrl)
@@ -48,6 +132,25 @@ public class SqsHelper {
     }
 
 
+    // Like receiveMessages, and also asks for each message's SentTimestamp
+    public static List<Message> receiveMessagesWithSentTimestamp(String queueUrl, int maxMessages) {
+        ReceiveMessageRequest request = ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .maxNumberOfMessages(maxMessages)
+                .waitTimeSeconds(10)        // Long polling
+                .visibilityTimeout(30)
+                .messageSystemAttributeNames(MessageSystemAttributeName.SENT_TIMESTAMP)
+                .build();
+
+        return sqs.receiveMessage(request).messages();
+    }
+
+    // Epoch millis the message was sent, or -1 if not requested
+    public static long sentTimestamp(Message msg) {
+        String ts = msg.attributes().get(MessageSystemAttributeName.SENT_TIMESTAMP);
+        return (ts != null) ? Long.parseLong(ts) : -1;
+    }
+
     public static void deleteMessage(String queueUrl, String receiptHandle) {
         DeleteMessageRequest request = DeleteMessageRequest.builder()
                 .queueUrl(queueUrl)
@@ -56,6 +159,89 @@ public class SqsHelper {
         sqs.deleteMessage(request);
     }
 
+    // Extend (or shorten) how long a received message stays invisible
+    public static void changeMessageVisibility(String queueUrl, String receiptHandle, int visibilitySeconds) {
+        ChangeMessageVisibilityRequest request = ChangeMessageVisibilityRequest.builder()
+                .queueUrl(queueUrl)
+                .receiptHandle(receiptHandle)
+                .visibilityTimeout(visibilitySeconds)
+                .build();
+        sqs.changeMessageVisibility(request);
+    }
+
+    // DeleteMessageBatch, 10 entries per call; only failed entries are retried
+    public static void deleteMessageBatch(String queueUrl, List<String> receiptHandles) {
+        for (int from = 0; from < receiptHandles.size(); from += MAX_BATCH) {
+            List<String> chunk = receiptHandles.subList(from,
+                    Math.min(from + MAX_BATCH, receiptHandles.size()));
+            deleteBatchWithRetry(queueUrl, chunk);
+        }
+    }
+
+    private static void deleteBatchWithRetry(String queueUrl, List<String> chunk) {
+        Map<String, String> pending = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            pending.put(String.valueOf(i), chunk.get(i));
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>();
+            pending.forEach((id, handle) -> entries.add(DeleteMessageBatchRequestEntry.builder()
+                    .id(id)
+                    .receiptHandle(handle)
+                    .build()));
+
+            DeleteMessageBatchResponse res = sqs.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+
+            res.successful().forEach(ok -> pending.remove(ok.id()));
+            if (pending.isEmpty()) return;
+
+            if (attempt >= MAX_BATCH_ATTEMPTS) {
+                // Not fatal: the messages become visible again and are re-ingested
+                System.err.println("[SQS] DeleteMessageBatch: " + pending.size()
+                        + " entries still failing: " + res.failed().get(0).message());
+                return;
+            }
+
+            try { Thread.sleep(100L << attempt); }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ApproximateNumberOfMessages (visible, not yet received)
+    public static int getQueueDepth(String queueUrl) {
+        GetQueueAttributesResponse res = sqs.getQueueAttributes(GetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)
+                .build());
+
+        return Integer.parseInt(res.attributes()
+                .getOrDefault(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES, "0"));
+    }
+
+    // Approximate counts: visible (waiting) and in flight (received, not yet deleted)
+    public record QueueStats(int visible, int inFlight) { }
+
+    public static QueueStats getQueueStats(String queueUrl) {
+        GetQueueAttributesResponse res = sqs.getQueueAttributes(GetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES,
+                        QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE)
+                .build());
+
+        return new QueueStats(
+                Integer.parseInt(res.attributes()
+                        .getOrDefault(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES, "0")),
+                Integer.parseInt(res.attributes()
+                        .getOrDefault(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE, "0")));
+    }
+
     public static String createQueueIfNotExists(String queueName) {
         try {
             GetQueueUrlRequest getRequest = GetQueueUrlRequest.builder()
@@ -72,4 +258,30 @@ public class SqsHelper {
                     .build()).queueUrl();
         }
     }
+
+    // A queue whose messages SQS moves to the dead-letter queue after
+    // maxReceiveCount receives without a delete (e.g. a task that keeps
+    // crashing its consumer). Set on every call, so existing queues get it too.
+    public static String createQueueIfNotExists(String queueName, String deadLetterQueueUrl, int maxReceiveCount) {
+        String queueUrl = createQueueIfNotExists(queueName);
+
+        String redrivePolicy = "{\"deadLetterTargetArn\":\"" + getQueueArn(deadLetterQueueUrl)
+                + "\",\"maxReceiveCount\":\"" + maxReceiveCount + "\"}";
+
+        sqs.setQueueAttributes(SetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributes(Map.of(QueueAttributeName.REDRIVE_POLICY, redrivePolicy))
+                .build());
+
+        return queueUrl;
+    }
+
+    public static String getQueueArn(String queueUrl) {
+        GetQueueAttributesResponse res = sqs.getQueueAttributes(GetQueueAttributesRequest.builder()
+                .queueUrl(queueUrl)
+                .attributeNames(QueueAttributeName.QUEUE_ARN)
+                .build());
+
+        return res.attributes().get(QueueAttributeName.QUEUE_ARN);
+    }
 }
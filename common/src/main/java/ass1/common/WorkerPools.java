@@ -0,0 +1,119 @@
+package ass1.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Analysis types → worker pools. Each pool has its own tasks queue
+// (worker-tasks-<pool>) and its own fleet, so POS, CONSTITUENCY and
+// DEPENDENCY work no longer share one FIFO and one instance size.
+//
+// Pools come from WORKER_POOLS, e.g. "pos=POS;parse=CONSTITUENCY,DEPENDENCY"
+// (types in one pool are still fused into one task per URL, so that split
+// keeps the shared PCFG parse). The default is one pool per type.
+// "<TYPE>@<engine>" goes to the pool of its base type; types no pool lists
+// go to the first pool. Manager and workers must use the same WORKER_POOLS.
+public class WorkerPools {
+
+    private static final String QUEUE_PREFIX = "worker-tasks-";
+    private static final String ENGINE_SEPARATOR = "@";
+
+    // Tasks that ran out of retries (copied by workers), and tasks SQS moved
+    // off a pool queue after MAX_RECEIVE_COUNT receives: those kept killing
+    // their worker (OOM, native crash), so no worker could report them.
+    // Must stay above the workers' MAX_ATTEMPTS.
+    public static final String DEAD_LETTER_QUEUE = "worker-tasks-dead-letter";
+
+    // Where the Manager moves dead-lettered tasks once their lines are recorded
+    public static final String DEAD_LETTER_ARCHIVE = "worker-tasks-dead-letter-archive";
+    private static final int MAX_RECEIVE_COUNT = readIntEnv("MAX_RECEIVE_COUNT", 10);
+
+    public static final String DEFAULT_SPEC =
+            "pos=POS;constituency=CONSTITUENCY;dependency=DEPENDENCY";
+
+    public record Pool(String name, Set<String> analysisTypes) {
+        public String queueName() {
+            return QUEUE_PREFIX + name;
+        }
+    }
+
+    private static final String SPEC =
+            System.getenv().getOrDefault("WORKER_POOLS", DEFAULT_SPEC);
+
+    private static final List<Pool> pools = parse(SPEC);
+
+
+    // The pool's tasks queue, with its redrive policy to the dead-letter queue
+    public static String createQueue(Pool pool) {
+        String deadLetterUrl = SqsHelper.createQueueIfNotExists(DEAD_LETTER_QUEUE);
+        return SqsHelper.createQueueIfNotExists(pool.queueName(), deadLetterUrl, MAX_RECEIVE_COUNT);
+    }
+
+    // The WORKER_POOLS value in effect (passed on to launched workers)
+    public static String spec() {
+        return SPEC;
+    }
+
+    public static List<Pool> all() {
+        return pools;
+    }
+
+    public static Pool forType(String analysisType) {
+        String base = baseType(analysisType);
+        for (Pool p : pools) {
+            if (p.analysisTypes().contains(base)) return p;
+        }
+        return pools.get(0);
+    }
+
+    // Every pool serving at least one of these types
+    public static List<Pool> forTypes(Collection<String> analysisTypes) {
+        Set<Pool> result = new LinkedHashSet<>();
+        for (String type : analysisTypes) {
+            result.add(forType(type));
+        }
+        return new ArrayList<>(result);
+    }
+
+    // "DEPENDENCY@nndep" → "DEPENDENCY"
+    public static String baseType(String analysisType) {
+        return analysisType.split(ENGINE_SEPARATOR, 2)[0].trim().toUpperCase();
+    }
+
+    // "name=TYPE,TYPE;name=TYPE"
+    static List<Pool> parse(String spec) {
+        List<Pool> result = new ArrayList<>();
+
+        for (String entry : spec.split(";")) {
+            String[] p = entry.split("=", 2);
+            if (p.length < 2 || p[0].isBlank()) {
+                System.err.println("[Pools] Ignoring malformed pool: " + entry);
+                continue;
+            }
+
+            Set<String> types = new LinkedHashSet<>();
+            for (String type : p[1].split(",")) {
+                if (!type.isBlank()) types.add(baseType(type));
+            }
+            result.add(new Pool(p[0].trim().toLowerCase(), types));
+        }
+
+        if (result.isEmpty()) {
+            System.err.println("[Pools] No valid pool in \"" + spec + "\", using the default.");
+            return parse(DEFAULT_SPEC);
+        }
+        return result;
+    }
+
+    private static int readIntEnv(String name, int def) {
+        String env = System.getenv(name);
+        if (env != null) {
+            try {
+                return Math.max(1, Integer.parseInt(env.trim()));
+            } catch (NumberFormatException ignored) {}
+        }
+        return def;
+    }
+}
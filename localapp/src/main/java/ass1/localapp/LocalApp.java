@@ -16,7 +16,7 @@ public class LocalApp {
 
     public static void main(String[] args) throws Exception {
         if (args.length < 3) {
-            System.err.println("Usage: java LocalApp <input.txt> <n> <output.txt> [terminate]");
+            System.err.println("Usage: java LocalApp <input.txt> <n> <output.txt> [terminate] [deadline=<seconds>]");
             return;
         }
 
@@ -26,7 +26,17 @@ public class LocalApp {
         String outputPath = args[1];
         int n = Integer.parseInt(args[2]);
         // LocalApp.java - קוד מתוקן
-        boolean terminate = args.length >= 4 && "terminate".equalsIgnoreCase(args[3]);
+        boolean terminate = false;
+        long deadlineSeconds = 0;   // 0 = wait for the full summary only
+
+        for (int i = 3; i < args.length; i++) {
+            if ("terminate".equalsIgnoreCase(args[i])) {
+                terminate = true;
+            } else if (args[i].startsWith("deadline=")) {
+                // sent as is: the Manager turns it into a time on its own clock
+                deadlineSeconds = Long.parseLong(args[i].substring("deadline=".length()));
+            }
+        }
 
 
         // Generate unique response queue name
@@ -51,7 +61,8 @@ public class LocalApp {
                 "s3://" + BUCKET_NAME + "/" + s3Key,
                 n,
                 responseQueueName,
-                terminate
+                terminate,
+                deadlineSeconds
         );
 
         String tasksQueueUrl = SqsHelper.createQueueIfNotExists("tasks-queue");
@@ -63,25 +74,50 @@ public class LocalApp {
         boolean received = false;
         while (!received) {
             List<Message> messages = SqsHelper.receiveMessages(responseQueueUrl, 5);
+
+            // Summaries are not ordered: a partial can be delivered after the
+            // final one, even within the same batch. Once the final summary is
+            // in hand, partials are dropped so they never overwrite it.
+            boolean finalInBatch = messages.stream()
+                    .anyMatch(m -> m.body().startsWith("SUMMARY_DONE")
+                            && !MessageFormatter.parseSummaryDone(m.body().trim()).partial());
+
             for (Message msg : messages) {
                 System.out.println("[DEBUG] Received message: '" + msg.body() + "'");
                 if (msg.body().startsWith("SUMMARY_DONE")) {
                     System.out.println("[DEBUG] Parsing SUMMARY_DONE message: " + msg.body());
 
-                    String[] parts = msg.body().trim().split("\\s+");
-                    String summaryKey = parts[2];
+                    MessageFormatter.SummaryDoneFields summary =
+                            MessageFormatter.parseSummaryDone(msg.body().trim());
+
+                    if (summary.partial() && (received || finalInBatch)) {
+                        System.out.println("[DEBUG] Ignoring partial summary, final summary already received");
+                        SqsHelper.deleteMessage(responseQueueUrl, msg.receiptHandle());
+                        continue;
+                    }
+
+                    String summaryKey = summary.summaryS3Path();
                     System.out.println("[DEBUG] Extracted summary key: " + summaryKey);
 
                     S3Helper.downloadFile(BUCKET_NAME, summaryKey, Path.of(outputPath));
-                    System.out.println("[INFO] Downloaded summary to: " + outputPath);
                     SqsHelper.deleteMessage(responseQueueUrl, msg.receiptHandle());
+
+                    // deadline reached: keep the partial summary and wait for the full one
+                    if (summary.partial()) {
+                        System.out.println("[INFO] Deadline reached, partial summary downloaded to: " + outputPath
+                                + " (" + (System.currentTimeMillis() - start) + " ms)");
+                        continue;
+                    }
+
+                    System.out.println("[INFO] Downloaded summary to: " + outputPath);
                     received = true;
-                    break;
                 } else {
                     SqsHelper.deleteMessage(responseQueueUrl, msg.receiptHandle());
                 }
             }
-            Thread.sleep(2000); // Poll every 2 seconds
+            if (!received) {
+                Thread.sleep(2000); // Poll every 2 seconds
+            }
         }
         
         long end = System.currentTimeMillis();
@@ -0,0 +1,244 @@
+package ass1.manager;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import ass1.common.Ec2Helper;
+import ass1.common.SqsHelper;
+import ass1.common.WorkerPools;
+import software.amazon.awssdk.services.ec2.model.Instance;
+import software.amazon.awssdk.services.ec2.model.InstanceType;
+
+// Control loop that sizes one worker pool's fleet from that pool's tasks
+// queue (the Manager runs one per pool, see WorkerPools).
+//
+// desired = ceil((backlog + queued + in flight) / tasksPerWorker), clamped to
+// [min, max], where backlog is tasks the Manager holds back from SQS.
+// Scale-up happens as soon as desired exceeds the live count (pending
+// instances count as live, so a boot in progress is not launched twice, and
+// instances that died are replaced on the next tick). Scale-down needs the
+// surplus to exceed a slack for scaleDownTicks ticks in a row, waits for a
+// longer cooldown after a scale-up, and then removes one instance per tick,
+// so short dips between bursts do not thrash instances.
+//
+// Terminating a worker loses its tasks in progress (they reappear after their
+// lease and count towards the queue's MAX_RECEIVE_COUNT), so the fleet never
+// shrinks below the number of tasks in flight: at most one busy worker per
+// task, so at least that many instances are kept.
+//
+// All AWS access goes through Cluster, and time through a clock, so the loop
+// can be driven tick by tick against a simulated fleet.
+public class Autoscaler {
+
+    // The fleet and queue the loop observes and acts on
+    public interface Cluster {
+        SqsHelper.QueueStats taskQueueStats();
+        List<WorkerInstance> liveWorkers();      // pending + running
+        void launchWorkers(int count);
+        void terminateWorkers(List<String> instanceIds);
+    }
+
+    public record WorkerInstance(String instanceId, long launchedAtMillis) { }
+
+    public record Config(int minWorkers,
+                         int maxWorkers,
+                         int scaleDownSlack,
+                         int scaleDownTicks,
+                         long scaleUpCooldownMs,
+                         long scaleDownCooldownMs,
+                         long periodMs) {
+
+        // MIN_WORKERS_<POOL> / MAX_WORKERS_<POOL> override the pool's bounds;
+        // by default the MAX_WORKERS budget is split evenly between the pools
+        public static Config fromEnv(String pool, int poolCount) {
+            String suffix = "_" + pool.toUpperCase();
+            int maxTotal = readIntEnv("MAX_WORKERS", 18);
+
+            return new Config(
+                    readIntEnv("MIN_WORKERS" + suffix, readIntEnv("MIN_WORKERS", 0)),
+                    readIntEnv("MAX_WORKERS" + suffix, Math.max(1, maxTotal / Math.max(1, poolCount))),
+                    readIntEnv("SCALE_DOWN_SLACK", 1),
+                    Math.max(1, readIntEnv("SCALE_DOWN_TICKS", 3)),
+                    readIntEnv("SCALE_UP_COOLDOWN_SEC", 30) * 1000L,
+                    readIntEnv("SCALE_DOWN_COOLDOWN_SEC", 300) * 1000L,
+                    readIntEnv("AUTOSCALE_PERIOD_SEC", 20) * 1000L);
+        }
+    }
+
+    // What one tick saw and did (logged, and handy when simulating)
+    public record Decision(int backlog, int queued, int inFlight, int live, int desired, int launched, int terminated) { }
+
+    private final String name;
+    private final Cluster cluster;
+    private final Config config;
+    private final IntSupplier tasksPerWorker;
+    private final IntSupplier backlog;
+    private final LongSupplier clock;
+
+    private long lastScaleUp = Long.MIN_VALUE / 2;
+    private long lastScaleDown = Long.MIN_VALUE / 2;
+    private int surplusTicks = 0;
+
+    private final ScheduledExecutorService scheduler;
+
+    public Autoscaler(String name,
+                      Cluster cluster,
+                      Config config,
+                      IntSupplier tasksPerWorker,
+                      IntSupplier backlog,
+                      LongSupplier clock) {
+        this.name = name;
+        this.cluster = cluster;
+        this.config = config;
+        this.tasksPerWorker = tasksPerWorker;
+        this.backlog = backlog;
+        this.clock = clock;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "autoscaler-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Config config() {
+        return config;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::safeTick, 0, config.periodMs(), TimeUnit.MILLISECONDS);
+        System.out.println("[Autoscaler " + name + "] Started: " + config);
+    }
+
+    // New work was queued: evaluate now instead of waiting for the next period
+    public void requestTick() {
+        scheduler.execute(this::safeTick);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private void safeTick() {
+        try {
+            tick();
+        } catch (Exception e) {
+            System.err.println("[Autoscaler " + name + "] Tick failed: " + e.getMessage());
+        }
+    }
+
+    public synchronized Decision tick() {
+        long now = clock.getAsLong();
+
+        SqsHelper.QueueStats stats = cluster.taskQueueStats();
+        List<WorkerInstance> live = cluster.liveWorkers();
+
+        int perWorker = Math.max(1, tasksPerWorker.getAsInt());
+        int waiting = backlog.getAsInt();
+        int demand = waiting + stats.visible() + stats.inFlight();
+        int desired = (demand + perWorker - 1) / perWorker;
+        desired = Math.max(config.minWorkers(), Math.min(config.maxWorkers(), desired));
+
+        int launched = 0;
+        int terminated = 0;
+
+        if (desired > live.size()) {
+            if (now - lastScaleUp >= config.scaleUpCooldownMs()) {
+                launched = desired - live.size();
+                cluster.launchWorkers(launched);
+                lastScaleUp = now;
+            }
+        }
+
+        // never below the workers that may be holding a task
+        int keep = Math.max(desired, Math.min(live.size(), stats.inFlight()));
+
+        if (live.size() - keep > config.scaleDownSlack()) {
+            surplusTicks++;
+
+            // one instance per (periodic) tick once the surplus has lasted
+            if (surplusTicks >= config.scaleDownTicks()
+                    && now - lastScaleUp >= config.scaleDownCooldownMs()
+                    && now - lastScaleDown >= config.periodMs()) {
+
+                // newest first: they are the least likely to be busy or warmed up
+                List<String> victims = live.stream()
+                        .sorted(Comparator.comparingLong(WorkerInstance::launchedAtMillis).reversed())
+                        .limit(1)
+                        .map(WorkerInstance::instanceId)
+                        .toList();
+
+                cluster.terminateWorkers(victims);
+                terminated = victims.size();
+                lastScaleDown = now;
+            }
+        } else {
+            surplusTicks = 0;
+        }
+
+        Decision d = new Decision(waiting, stats.visible(), stats.inFlight(), live.size(), desired, launched, terminated);
+        if (launched > 0 || terminated > 0) {
+            System.out.println("[Autoscaler " + name + "] " + d);
+        }
+        return d;
+    }
+
+
+    // Real fleet: EC2 workers tagged with the pool, and the pool's tasks queue.
+    // Instances come from WORKER_INSTANCE_TYPE_<POOL> (default t3.micro).
+    public static class AwsCluster implements Cluster {
+        private final String tasksQueueUrl;
+        private final WorkerPools.Pool pool;
+        private final InstanceType instanceType;
+
+        public AwsCluster(String tasksQueueUrl, WorkerPools.Pool pool) {
+            this.tasksQueueUrl = tasksQueueUrl;
+            this.pool = pool;
+
+            String type = System.getenv("WORKER_INSTANCE_TYPE_" + pool.name().toUpperCase());
+            this.instanceType = type != null ? InstanceType.fromValue(type.trim()) : InstanceType.T3_MICRO;
+        }
+
+        @Override
+        public SqsHelper.QueueStats taskQueueStats() {
+            return SqsHelper.getQueueStats(tasksQueueUrl);
+        }
+
+        @Override
+        public List<WorkerInstance> liveWorkers() {
+            return Ec2Helper.getRunningWorkers(pool.name()).stream()
+                    .map(i -> new WorkerInstance(i.instanceId(), launchedAt(i)))
+                    .toList();
+        }
+
+        @Override
+        public void launchWorkers(int count) {
+            Ec2Helper.createWorkers(pool, instanceType, count);
+        }
+
+        @Override
+        public void terminateWorkers(List<String> instanceIds) {
+            Ec2Helper.terminateInstances(instanceIds);
+        }
+
+        private static long launchedAt(Instance i) {
+            return i.launchTime() != null ? i.launchTime().toEpochMilli() : 0L;
+        }
+    }
+
+
+    private static int readIntEnv(String name, int def) {
+        String env = System.getenv(name);
+        if (env != null) {
+            try {
+                return Math.max(0, Integer.parseInt(env.trim()));
+            } catch (NumberFormatException ignored) {}
+        }
+        return def;
+    }
+}
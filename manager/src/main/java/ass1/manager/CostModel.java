@@ -0,0 +1,164 @@
+package ass1.manager;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ass1.common.WorkerPools;
+
+// Predicts how long one ANALYZE task will take, so the dispatchers can send
+// the longest tasks first (LPT) and the summary can report a predicted time.
+//
+// estimate = TASK_OVERHEAD_MS + input size × ms-per-byte of the slowest type
+// in the task (fused types share one parse, so they do not add up).
+// Sizes come from an HTTP HEAD (Content-Length), cached per URL. HEADs run in
+// the background, never on the ingest path: a URL not yet sized gets the
+// default estimate. A failed HEAD is cached as unknown for FAILED_SIZE_TTL_MS,
+// so a dead URL is not asked again by every job listing it. Rates start
+// from rough per-type guesses and follow the analysis times workers report
+// (moving average), so estimates improve as jobs run.
+public class CostModel {
+
+    private static final long TASK_OVERHEAD_MS = 500;
+
+    // Used when HEAD fails or the server sends no Content-Length
+    private static final long UNKNOWN_SIZE = 64 * 1024;
+
+    private static final int HEAD_TIMEOUT_MS = 2000;
+    private static final int HEAD_THREADS = 16;
+    private static final int MAX_CACHED_SIZES = 100_000;
+    private static final long FAILED_SIZE_TTL_MS = 10 * 60 * 1000;
+
+    // Weight of a new observation in the moving average
+    private static final double ALPHA = 0.2;
+
+    // Starting guesses (ms per KB of input), replaced by measurements
+    private static final Map<String, Double> INITIAL_MS_PER_KB = Map.of(
+            "POS", 2.0,
+            "CONSTITUENCY", 60.0,
+            "DEPENDENCY", 70.0);
+    private static final double DEFAULT_MS_PER_KB = 60.0;
+
+    // bytes -1: the HEAD failed or gave no Content-Length
+    private record Size(long bytes, long expiresAtMillis) { }
+
+    private final ConcurrentHashMap<String, Size> sizes = new ConcurrentHashMap<>();
+    private final Set<String> fetching = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Double> msPerByte = new ConcurrentHashMap<>();
+
+    private final ExecutorService headPool = Executors.newFixedThreadPool(HEAD_THREADS, r -> {
+        Thread t = new Thread(r, "cost-head");
+        t.setDaemon(true);
+        return t;
+    });
+
+
+    // Input size of each URL as known right now, -1 if unknown. Never waits:
+    // unknown URLs are HEADed in the background for the next lookup.
+    public Map<String, Long> sizesOf(Collection<String> urls) {
+        if (sizes.size() > MAX_CACHED_SIZES) sizes.clear();
+
+        long now = System.currentTimeMillis();
+        Map<String, Long> result = new HashMap<>();
+
+        for (String url : urls) {
+            Size known = sizes.get(url);
+            if (known != null && known.expiresAtMillis() > now) {
+                result.put(url, known.bytes());
+                continue;
+            }
+
+            result.put(url, -1L);
+            if (fetching.add(url)) {
+                headPool.execute(() -> {
+                    try {
+                        long size = headSize(url);
+                        sizes.put(url, new Size(size, size >= 0
+                                ? Long.MAX_VALUE
+                                : System.currentTimeMillis() + FAILED_SIZE_TTL_MS));
+                    } finally {
+                        fetching.remove(url);
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    // Predicted analysis time of one task; sizeBytes < 0 means unknown
+    public long estimateMs(Collection<String> analysisTypes, long sizeBytes) {
+        long size = sizeBytes >= 0 ? sizeBytes : UNKNOWN_SIZE;
+
+        double rate = 0;
+        for (String type : analysisTypes) {
+            rate = Math.max(rate, rateOf(WorkerPools.baseType(type)));
+        }
+        return TASK_OVERHEAD_MS + Math.round(size * rate);
+    }
+
+    // A worker reported how long a task of this type took on this input
+    public void observe(String analysisType, long inputBytes, long elapsedMs) {
+        if (inputBytes <= 0 || elapsedMs <= 0) return;   // cache hit or no timing
+
+        double observed = (double) elapsedMs / inputBytes;
+        msPerByte.merge(WorkerPools.baseType(analysisType), observed,
+                (old, now) -> old + ALPHA * (now - old));
+    }
+
+    private double rateOf(String baseType) {
+        Double rate = msPerByte.get(baseType);
+        if (rate != null) return rate;
+        return INITIAL_MS_PER_KB.getOrDefault(baseType, DEFAULT_MS_PER_KB) / 1024.0;
+    }
+
+    private long headSize(String url) {
+        try {
+            URLConnection conn = URI.create(url).toURL().openConnection();
+            conn.setConnectTimeout(HEAD_TIMEOUT_MS);
+            conn.setReadTimeout(HEAD_TIMEOUT_MS);
+
+            if (conn instanceof HttpURLConnection http) {
+                http.setRequestMethod("HEAD");
+                try {
+                    return http.getContentLengthLong();
+                } finally {
+                    http.disconnect();
+                }
+            }
+            return -1;
+
+        } catch (Exception e) {
+            System.out.println("[Cost] HEAD failed for " + url + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+
+    // Wall-clock estimate for a job: per pool, the work spread over the pool's
+    // workers, but never less than its longest task; the slowest pool decides
+    public static long predictMakespanMs(Map<String, Long> workMsByPool,
+                                         Map<String, Long> longestMsByPool,
+                                         Map<String, Integer> workersByPool) {
+        long makespan = 0;
+        for (Map.Entry<String, Long> e : workMsByPool.entrySet()) {
+            int workers = Math.max(1, workersByPool.getOrDefault(e.getKey(), 1));
+            long longest = longestMsByPool.getOrDefault(e.getKey(), 0L);
+            makespan = Math.max(makespan, Math.max(longest, e.getValue() / workers));
+        }
+        return makespan;
+    }
+
+    // One line for the summary header
+    public static String describe(long predictedMs, long workMs, long actualMs) {
+        return String.format(
+                "Predicted time: %.1f s (%.1f s of analysis work, longest tasks first). Elapsed: %.1f s.",
+                predictedMs / 1000.0, workMs / 1000.0, actualMs / 1000.0);
+    }
+}
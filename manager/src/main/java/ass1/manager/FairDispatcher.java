@@ -0,0 +1,306 @@
+package ass1.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+// Feeds one worker pool's tasks queue from per-job pending queues instead of
+// letting every job push straight into the shared FIFO. Each pool has its
+// own dispatcher, so slow DEPENDENCY lines never use up the POS pool's quota.
+//
+// Jobs take turns in deficit round-robin: each turn a job earns QUANTUM
+// lines of credit and sends tasks while its credit covers them, a fused
+// task costing one credit per input line. A 5-line job submitted behind a
+// 20,000-line one is therefore sent within one round.
+//
+// Within a job, tasks go longest estimated time first (LPT, see CostModel),
+// so a huge document listed last in the input does not also start last and
+// hold the job open long after everything else has finished.
+//
+// Jobs with a deadline still ahead go first, earliest deadline first; once
+// the deadline has passed they share the round-robin like everyone else.
+//
+// At most maxOutstanding lines are in SQS (sent, no result yet) at any time,
+// which keeps the queue short enough for new jobs to get in quickly while
+// still giving every idle worker something to take. Ingest waits on
+// awaitBacklogBelow, so a huge input is never held here in full either.
+public class FairDispatcher {
+
+    // One ANALYZE message, the input lines (task indices) it covers and its
+    // predicted analysis time
+    public record Task(String jobId, String body, List<Integer> indices, long estimatedMs) { }
+
+    // longest first; equal estimates keep input order
+    private static final Comparator<Task> LONGEST_FIRST =
+            Comparator.comparingLong(Task::estimatedMs).reversed()
+                    .thenComparingInt(t -> t.indices().get(0));
+
+    private static final int QUANTUM = 10;
+
+    private final String name;
+    private final int maxOutstanding;
+    private final Function<List<Task>, List<Task>> sender;   // sends, returns the tasks not queued
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition drained = lock.newCondition();   // a job's pending lines went down
+
+    private final Map<String, JobQueue> queues = new HashMap<>();
+    private final ArrayDeque<JobQueue> ring = new ArrayDeque<>();   // jobs with pending tasks, next turn first
+    private int outstanding = 0;
+    private int pendingTasks = 0;
+    private volatile boolean running = true;
+
+    private static final class JobQueue {
+        final long deadlineMillis;   // 0 = none
+        final PriorityQueue<Task> pending = new PriorityQueue<>(LONGEST_FIRST);
+        int pendingLines = 0;
+        int deficit = 0;
+        boolean inRing = false;
+
+        JobQueue(long deadlineMillis) {
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    public FairDispatcher(String name, int maxOutstanding, Function<List<Task>, List<Task>> sender) {
+        this.name = name;
+        this.maxOutstanding = maxOutstanding;
+        this.sender = sender;
+    }
+
+    public void start() {
+        Thread t = new Thread(this::run, "fair-dispatcher-" + name);
+        t.setDaemon(true);
+        t.start();
+        System.out.println("[Dispatcher " + name + "] Started, max outstanding lines: " + maxOutstanding);
+    }
+
+    public void stop() {
+        running = false;
+        lock.lock();
+        try {
+            changed.signal();
+            drained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void enqueue(String jobId, long deadlineMillis, List<Task> tasks) {
+        if (tasks.isEmpty()) return;
+
+        lock.lock();
+        try {
+            JobQueue q = queues.computeIfAbsent(jobId, id -> new JobQueue(deadlineMillis));
+            q.pending.addAll(tasks);
+            pendingTasks += tasks.size();
+            tasks.forEach(t -> q.pendingLines += t.indices().size());
+            activate(q);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lines of this job waiting here, not yet in SQS
+    public int pendingLines(String jobId) {
+        lock.lock();
+        try {
+            JobQueue q = queues.get(jobId);
+            return q != null ? q.pendingLines : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until fewer than maxLines lines of this job wait here (not yet
+    // in SQS), or the job is gone. Backpressure for ingest.
+    public void awaitBacklogBelow(String jobId, int maxLines) throws InterruptedException {
+        lock.lock();
+        try {
+            JobQueue q;
+            while (running && (q = queues.get(jobId)) != null && q.pendingLines >= maxLines) {
+                drained.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A result arrived for lines that were sent through here
+    public void completed(int lines) {
+        lock.lock();
+        try {
+            outstanding = Math.max(0, outstanding - lines);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Job finished or abandoned: drop anything still pending for it
+    public void removeJob(String jobId) {
+        lock.lock();
+        try {
+            JobQueue q = queues.remove(jobId);
+            if (q != null) {
+                ring.remove(q);
+                pendingTasks -= q.pending.size();
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Tasks waiting here, not yet in SQS (the autoscaler counts them as demand)
+    public int pendingTasks() {
+        lock.lock();
+        try {
+            return pendingTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            List<Task> round;
+
+            try {
+                round = nextRound();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (round.isEmpty()) continue;
+
+            // not sent: give the credit back and requeue with the rest of each job
+            List<Task> unsent;
+            try {
+                unsent = sender.apply(round);
+            } catch (Exception e) {
+                System.err.println("[Dispatcher " + name + "] Send failed: " + e.getMessage());
+                unsent = round;
+            }
+
+            if (!unsent.isEmpty()) {
+                System.err.println("[Dispatcher " + name + "] Requeueing " + unsent.size()
+                        + " of " + round.size() + " task(s).");
+                requeue(unsent);
+            }
+        }
+    }
+
+    // Waits for capacity and pending work, then picks tasks round-robin
+    private List<Task> nextRound() throws InterruptedException {
+        lock.lock();
+        try {
+            while (running && (outstanding >= maxOutstanding || ring.isEmpty())) {
+                changed.await();
+            }
+
+            List<Task> round = new ArrayList<>();
+
+            // Earliest deadline first, while any deadline is still ahead
+            long now = System.currentTimeMillis();
+            JobQueue urgent;
+            while (outstanding < maxOutstanding && (urgent = earliestDeadline(now)) != null) {
+                Task t = urgent.pending.poll();
+                pendingTasks--;
+                urgent.pendingLines -= t.indices().size();
+                outstanding += t.indices().size();
+                round.add(t);
+
+                if (urgent.pending.isEmpty()) {
+                    ring.remove(urgent);
+                    urgent.inRing = false;
+                    urgent.deficit = 0;
+                }
+            }
+
+            // a task bigger than the quantum goes out once its job has had enough turns
+            while (outstanding < maxOutstanding && !ring.isEmpty()) {
+                JobQueue q = ring.poll();
+                q.deficit += QUANTUM;
+
+                while (!q.pending.isEmpty()
+                        && q.pending.peek().indices().size() <= q.deficit
+                        && outstanding < maxOutstanding) {
+
+                    Task t = q.pending.poll();
+                    pendingTasks--;
+                    q.pendingLines -= t.indices().size();
+                    q.deficit -= t.indices().size();
+                    outstanding += t.indices().size();
+                    round.add(t);
+                }
+
+                // back of the ring, so the next round resumes with the following job
+                if (q.pending.isEmpty()) {
+                    q.deficit = 0;
+                    q.inRing = false;
+                } else {
+                    ring.offer(q);
+                }
+            }
+
+            if (!round.isEmpty()) drained.signalAll();
+            return round;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private JobQueue earliestDeadline(long now) {
+        JobQueue best = null;
+        for (JobQueue q : queues.values()) {
+            if (q.pending.isEmpty() || q.deadlineMillis <= now) continue;
+            if (best == null || q.deadlineMillis < best.deadlineMillis) best = q;
+        }
+        return best;
+    }
+
+    private void activate(JobQueue q) {
+        if (!q.inRing) {
+            q.inRing = true;
+            ring.offer(q);
+        }
+    }
+
+    private void requeue(List<Task> unsent) {
+        lock.lock();
+        try {
+            for (int i = unsent.size() - 1; i >= 0; i--) {
+                Task t = unsent.get(i);
+                outstanding -= t.indices().size();
+
+                JobQueue q = queues.get(t.jobId());
+                if (q != null) {
+                    q.pending.add(t);
+                    pendingTasks++;
+                    q.pendingLines += t.indices().size();
+                    activate(q);
+                }
+            }
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
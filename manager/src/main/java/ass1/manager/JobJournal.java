@@ -0,0 +1,288 @@
+package ass1.manager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import ass1.common.S3Helper;
+
+// Append-only, per-job write-ahead log of Manager state, so a restarted
+// Manager can pick its jobs up again instead of losing them.
+//
+// journal/<jobId>.log, one tab-separated record per line:
+//   JOB        <jobId> <callbackQueue> <n> <inputKey> <deadlineMillis>
+//   TASK       <index> <analysisType> <url>      (before the task is sent)
+//   SENT       <index,index,...>                 (lines of one task now in SQS)
+//   ROW        <index> <summary row>             (before the result is acked)
+//   SEALED     <totalTasks>                      (end of input)
+//   PARTIAL                                      (deadline summary was sent)
+//
+// Each record is flushed to the OS before the caller acts on it. Logs that
+// changed are copied to S3 (journal/<jobId>.log) every checkpoint period, so
+// a replacement instance can recover too. The log is deleted once the
+// summary has been sent.
+public class JobJournal {
+
+    private static final String TAB = "\t";
+    private static final String S3_PREFIX = "journal/";
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final String bucket;
+    private final ConcurrentHashMap<String, JobLog> open = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService checkpointer =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // What a journal said about a job at the time of the crash
+    public record Recovered(String jobId,
+                            String callbackQueue,
+                            int tasksPerWorker,
+                            String inputKey,
+                            long deadlineMillis,        // 0 = none
+                            List<Task> tasks,           // in index order
+                            Map<Integer, String> rows,
+                            Set<Integer> sent,
+                            int sealedTotal,            // -1 if input was not fully read
+                            boolean partialSent) { }
+
+    public record Task(int index, String analysisType, String url) { }
+
+
+    public JobJournal(Path dir, String bucket) {
+        this.dir = dir;
+        this.bucket = bucket;
+
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void startCheckpoints(long periodMs) {
+        checkpointer.scheduleWithFixedDelay(this::checkpointAll, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+
+    // ------------------------------------------------------------------
+    //  WRITING
+    // ------------------------------------------------------------------
+
+    public JobLog create(String jobId, String callbackQueue, int tasksPerWorker,
+                         String inputKey, long deadlineMillis) {
+        JobLog log = open(jobId);
+        log.append(String.join(TAB, "JOB", jobId, callbackQueue,
+                String.valueOf(tasksPerWorker), inputKey, String.valueOf(deadlineMillis)));
+        return log;
+    }
+
+    // Reopen the log of a recovered job to keep appending to it
+    public JobLog open(String jobId) {
+        return open.computeIfAbsent(jobId, id -> new JobLog(id, dir.resolve(id + SUFFIX)));
+    }
+
+    // Summary delivered: the job no longer needs recovering
+    public synchronized void complete(String jobId) {
+        JobLog log = open.remove(jobId);
+        if (log != null) log.close();
+
+        try {
+            Files.deleteIfExists(dir.resolve(jobId + SUFFIX));
+            S3Helper.deleteObject(bucket, S3_PREFIX + jobId + SUFFIX);
+        } catch (Exception e) {
+            System.err.println("[Journal] Cleanup failed for job " + jobId + ": " + e.getMessage());
+        }
+    }
+
+    // synchronized with complete(): a late upload must not resurrect a finished job
+    private synchronized void checkpointAll() {
+        for (JobLog log : open.values()) {
+            try {
+                String snapshot = log.snapshotIfDirty();
+                if (snapshot != null) {
+                    S3Helper.putString(bucket, S3_PREFIX + log.jobId + SUFFIX, snapshot, Map.of());
+                }
+            } catch (Exception e) {
+                System.err.println("[Journal] Checkpoint failed for job " + log.jobId + ": " + e.getMessage());
+            }
+        }
+    }
+
+
+    public static final class JobLog {
+        private final String jobId;
+        private final Path file;
+        private final FileOutputStream fos;
+        private final BufferedWriter out;
+        private boolean dirty = false;
+
+        private JobLog(String jobId, Path file) {
+            this.jobId = jobId;
+            this.file = file;
+
+            try {
+                this.fos = new FileOutputStream(file.toFile(), true);
+                this.out = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void task(int index, String analysisType, String url) {
+            appendNoFlush(String.join(TAB, "TASK", String.valueOf(index), analysisType, url));
+        }
+
+        public void sent(List<Integer> indices) {
+            append("SENT" + TAB + String.join(",", indices.stream().map(String::valueOf).toList()));
+        }
+
+        public void row(int index, String row) {
+            append("ROW" + TAB + index + TAB + row);
+        }
+
+        public void sealed(int totalTasks) {
+            append("SEALED" + TAB + totalTasks);
+        }
+
+        public void partialSent() {
+            append("PARTIAL");
+        }
+
+        // flush TASK records before their tasks are handed on
+        public synchronized void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private synchronized void append(String record) {
+            appendNoFlush(record);
+            flush();
+        }
+
+        private synchronized void appendNoFlush(String record) {
+            try {
+                out.write(record);
+                out.newLine();
+                dirty = true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // fsync and read back a consistent copy; null if nothing changed since the last checkpoint
+        private synchronized String snapshotIfDirty() throws IOException {
+            if (!dirty) return null;
+            out.flush();
+            fos.getChannel().force(false);
+            dirty = false;
+            return Files.readString(file, StandardCharsets.UTF_8);
+        }
+
+        private synchronized void close() {
+            try {
+                out.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+
+    // ------------------------------------------------------------------
+    //  RECOVERY
+    // ------------------------------------------------------------------
+
+    // Logs left on disk, plus S3 checkpoints of jobs this disk never saw
+    // (the Manager came back on a new instance)
+    public List<Path> pendingLogs() throws IOException {
+        try {
+            for (String key : S3Helper.listKeys(bucket, S3_PREFIX)) {
+                Path local = dir.resolve(key.substring(S3_PREFIX.length()));
+                if (key.endsWith(SUFFIX) && !Files.exists(local)) {
+                    S3Helper.downloadFile(bucket, key, local);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("[Journal] Could not fetch S3 checkpoints: " + e.getMessage());
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+    }
+
+    // Replays one log. A torn last record (crash mid-write) is skipped.
+    public static Recovered replay(Path file) throws IOException {
+        String jobId = null, callbackQueue = null, inputKey = null;
+        int tasksPerWorker = 1;
+        long deadlineMillis = 0;
+        boolean partialSent = false;
+        List<Task> tasks = new ArrayList<>();
+        Map<Integer, String> rows = new HashMap<>();
+        Set<Integer> sent = new HashSet<>();
+        int sealedTotal = -1;
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String record;
+            while ((record = in.readLine()) != null) {
+                try {
+                    String[] p = record.split(TAB, 3);
+
+                    switch (p[0]) {
+                        case "JOB" -> {
+                            String[] j = record.split(TAB, 6);
+                            jobId = j[1];
+                            callbackQueue = j[2];
+                            tasksPerWorker = Integer.parseInt(j[3]);
+                            inputKey = j[4];
+                            deadlineMillis = Long.parseLong(j[5]);
+                        }
+                        case "TASK" -> {
+                            String[] t = record.split(TAB, 4);
+                            tasks.add(new Task(Integer.parseInt(t[1]), t[2], t[3]));
+                        }
+                        case "SENT" -> {
+                            for (String index : p[1].split(",")) sent.add(Integer.parseInt(index));
+                        }
+                        case "ROW" -> rows.putIfAbsent(Integer.parseInt(p[1]), p[2]);
+                        case "SEALED" -> sealedTotal = Integer.parseInt(p[1]);
+                        case "PARTIAL" -> partialSent = true;
+                        default -> System.err.println("[Journal] Skipping unknown record in " + file);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("[Journal] Skipping torn record in " + file + ": " + record);
+                }
+            }
+        }
+
+        if (jobId == null) {
+            throw new IOException("No JOB record in " + file);
+        }
+
+        return new Recovered(jobId, callbackQueue, tasksPerWorker, inputKey, deadlineMillis,
+                tasks, rows, sent, sealedTotal, partialSent);
+    }
+}
@@ -0,0 +1,47 @@
+package ass1.manager;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// UTF-8 lines from a stream, keeping the byte offset of the next line so the
+// stream can be closed and reopened there (S3 range request) later.
+class LineReader implements AutoCloseable {
+
+    private final InputStream in;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private long offset;
+
+    LineReader(InputStream in, long offset) {
+        this.in = new BufferedInputStream(in, 64 * 1024);
+        this.offset = offset;
+    }
+
+    // Next line without its terminator (\n or \r\n), or null at the end
+    String readLine() throws IOException {
+        line.reset();
+
+        int b;
+        while ((b = in.read()) != -1) {
+            offset++;
+            if (b == '\n') break;
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+
+        String s = line.toString(StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    // Byte offset of the next line
+    long offset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
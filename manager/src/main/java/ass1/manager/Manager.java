@@ -1,21 +1,44 @@
 package ass1.manager;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
 
 import ass1.common.AWS;
 import ass1.common.Ec2Helper;
 import ass1.common.HtmlBuilder;
 import ass1.common.MessageFormatter;
 import ass1.common.MessageType;
+import ass1.common.ResultCache;
 import ass1.common.S3Helper;
+import ass1.common.S3MultipartOutputStream;
 import ass1.common.SqsHelper;
+import ass1.common.WorkerPools;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.regions.internal.util.EC2MetadataUtils;
 import software.amazon.awssdk.services.ec2.Ec2Client;
@@ -26,11 +49,9 @@ import software.amazon.awssdk.services.sqs.model.Message;
 public class Manager {
 
     private static final String MANAGER_INPUT_QUEUE = "tasks-queue";
-    private static final String WORKER_TASKS_QUEUE = "worker-tasks-queue";
     private static final String WORKER_RESULTS_QUEUE = "worker-results-queue";
 
     private final String managerInputQueueUrl;
-    private final String workerTasksQueueUrl;
     private final String workerResultsQueueUrl;
 
     
@@ -40,35 +61,211 @@ public class Manager {
     // ======================================================================
     private final ExecutorService jobPool = Executors.newFixedThreadPool(10);
 
+    // Fires partial summaries at job deadlines
+    private final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor();
+
+    // Concurrent SendMessageBatch calls when dispatching ANALYZE tasks
+    private static final int DISPATCH_SENDERS = 8;
+    private final ExecutorService dispatchPool = Executors.newFixedThreadPool(DISPATCH_SENDERS);
+
+    // Concurrent result-cache HEADs while dispatching a batch
+    private static final int CACHE_LOOKUP_THREADS = readIntEnv("CACHE_LOOKUP_THREADS", 16);
+    private final ExecutorService cacheLookupPool = Executors.newFixedThreadPool(CACHE_LOOKUP_THREADS, r -> {
+        Thread t = new Thread(r, "cache-lookup");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
     private volatile boolean acceptingNewTasks = true;
     private volatile boolean shouldTerminate = false;
 
-    private AtomicInteger currentRunningWorkers = new AtomicInteger(0);
+    // Per worker pool (see WorkerPools): its tasks queue, a dispatcher feeding
+    // it from per-job queues round-robin with at most MAX_OUTSTANDING_LINES
+    // sent and not yet answered, and an autoscaler sizing the pool's fleet
+    private static final int MAX_OUTSTANDING_LINES = readIntEnv("MAX_OUTSTANDING_LINES", 400);
+    private final Map<String, String> workerTasksQueueUrls = new LinkedHashMap<>();
+    private final Map<String, FairDispatcher> dispatchers = new LinkedHashMap<>();
+    private final Map<String, Autoscaler> autoscalers = new LinkedHashMap<>();
+
+    // Worker-results ingestion: parallel pollers + visibility into throughput and lag
+    private static final int RESULT_POLLERS = readIntEnv("RESULT_POLLERS", 4);
+    private static final long INGESTION_REPORT_MS = 30_000;
+    private final AtomicLong resultsIngested = new AtomicLong();
+    private final AtomicLong maxResultLagMs = new AtomicLong();
+
+    // Writer buffer between the HTML rows and the summary upload
+    private static final int SUMMARY_BUFFER = 64 * 1024;
+
+    // Input lines read from S3 before a batch of tasks is sent
+    private static final int INGEST_BATCH_LINES = readIntEnv("INGEST_BATCH_LINES", 200);
+
+    // Reading pauses while more lines than this of the job wait in one pool's
+    // dispatcher, so a huge input is not pulled into memory ahead of the workers
+    private static final int MAX_PENDING_LINES = readIntEnv("MAX_PENDING_LINES", 2000);
+
+    // Crash recovery: per-job journal on local disk, checkpointed to S3
+    private static final String JOURNAL_DIR =
+            System.getenv().getOrDefault("JOURNAL_DIR", "journal");
+    private static final long JOURNAL_CHECKPOINT_MS = readIntEnv("JOURNAL_CHECKPOINT_SEC", 30) * 1000L;
+    private static final long RECOVERY_TIMEOUT_MS = readIntEnv("RECOVERY_TIMEOUT_SEC", 60) * 1000L;
+    private final JobJournal journal = new JobJournal(Path.of(JOURNAL_DIR), AWS.getInstance().bucketName);
+
+    // Task-time estimates for longest-first dispatch and the predicted job time
+    private final CostModel costModel = new CostModel();
+
+    // Speculative re-execution of tasks running far past their type's usual
+    // completion time (SPECULATION_FACTOR × p95), at most MAX_SPECULATIVE at once
+    private final StragglerMonitor stragglers = new StragglerMonitor(
+            readIntEnv("SPECULATION_FACTOR", 2),
+            readIntEnv("MAX_SPECULATIVE", 20),
+            SqsHelper::getQueueStats,
+            SqsHelper::sendMessage,
+            System::currentTimeMillis);
 
 
     public Manager() {
         this.managerInputQueueUrl = SqsHelper.createQueueIfNotExists(MANAGER_INPUT_QUEUE);
-        this.workerTasksQueueUrl = SqsHelper.createQueueIfNotExists(WORKER_TASKS_QUEUE);
         this.workerResultsQueueUrl = SqsHelper.createQueueIfNotExists(WORKER_RESULTS_QUEUE);
+
+        List<WorkerPools.Pool> pools = WorkerPools.all();
+        for (WorkerPools.Pool pool : pools) {
+            String queueUrl = WorkerPools.createQueue(pool);
+            FairDispatcher dispatcher = new FairDispatcher(pool.name(), MAX_OUTSTANDING_LINES,
+                    round -> sendTasks(pool.name(), queueUrl, round));
+
+            workerTasksQueueUrls.put(pool.name(), queueUrl);
+            dispatchers.put(pool.name(), dispatcher);
+
+            // the strictest n among running jobs decides tasks per worker
+            autoscalers.put(pool.name(), new Autoscaler(
+                    pool.name(),
+                    new Autoscaler.AwsCluster(queueUrl, pool),
+                    Autoscaler.Config.fromEnv(pool.name(), pools.size()),
+                    () -> jobs.values().stream().mapToInt(j -> j.tasksPerWorker).min().orElse(1),
+                    dispatcher::pendingTasks,
+                    System::currentTimeMillis));
+        }
     }
 
 
+    // One summary row per input line, addressed by its index in the file.
+    // SQS may deliver a worker result more than once: the done-bitset lets
+    // only the first result for each index count towards completion.
+    //
+    // The input is streamed, so rows live in fixed-size segments added as
+    // lines are read; totalTasks stays -1 until the end of the stream.
     private static class Job {
+        private static final int SEGMENT_BITS = 10;   // 1024 rows per segment
+        private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+        private static final class Segment {
+            final String[] rows = new String[SEGMENT_SIZE];
+            final AtomicLongArray doneBits = new AtomicLongArray(SEGMENT_SIZE / 64);
+        }
+
         final String jobId;
         final String callbackQueue;
-        final int totalTasks;
-        final ConcurrentHashMap<String, String> results = new ConcurrentHashMap<>();
+        final int tasksPerWorker;   // n from NEW_TASK
+        final long deadlineMillis;  // partial summary due; 0 = none
+        final JobJournal.JobLog log;
+        volatile int totalTasks = -1;
+        private volatile Segment[] segments = new Segment[0];
+        private volatile int lineCount = 0;   // written by the ingesting thread only
         final AtomicInteger completed = new AtomicInteger(0);
         final CompletableFuture<Void> finished =    new CompletableFuture<>();
+        final long startedMillis = System.currentTimeMillis();
 
-        Job(String jobId, String callbackQueue, int totalTasks) {
+        // estimated analysis time queued per pool, and the longest single task
+        private final Map<String, Long> predictedWorkMs = new HashMap<>();
+        private final Map<String, Long> predictedLongestMs = new HashMap<>();
+
+        Job(String jobId, String callbackQueue, int tasksPerWorker, long deadlineMillis, JobJournal.JobLog log) {
             this.jobId = jobId;
             this.callbackQueue = callbackQueue;
-            this.totalTasks = totalTasks;
+            this.tasksPerWorker = tasksPerWorker;
+            this.deadlineMillis = deadlineMillis;
+            this.log = log;
+        }
+
+        // Reserve the next task index (called before the task is dispatched).
+        // Jobs with a deadline start each row as PENDING for the partial summary.
+        int addLine(String analysisType, String url) {
+            int index = lineCount;
+            int s = index >>> SEGMENT_BITS;
+
+            if (s == segments.length) {
+                Segment[] grown = Arrays.copyOf(segments, s + 1);
+                grown[s] = new Segment();
+                segments = grown;
+            }
+
+            if (deadlineMillis > 0) {
+                setRow(index, analysisType + "\t" + url + "\t" + HtmlBuilder.PENDING);
+            }
+
+            lineCount = index + 1;
+            return index;
+        }
+
+        boolean isKnown(int index) {
+            return index >= 0 && index < lineCount;
+        }
+
+        // End of input: the job is done once every line has a row
+        void seal(int total) {
+            totalTasks = total;
+            if (completed.get() == total) {
+                finished.complete(null);
+            }
+        }
+
+        // true only for the first caller on this index
+        boolean markDone(int index) {
+            AtomicLongArray doneBits = segments[index >>> SEGMENT_BITS].doneBits;
+            int word = (index & (SEGMENT_SIZE - 1)) >>> 6;
+            long bit = 1L << (index & 63);
+
+            while (true) {
+                long cur = doneBits.get(word);
+                if ((cur & bit) != 0) return false;
+                if (doneBits.compareAndSet(word, cur, cur | bit)) return true;
+            }
+        }
+
+        void setRow(int index, String row) {
+            segments[index >>> SEGMENT_BITS].rows[index & (SEGMENT_SIZE - 1)] = row;
+        }
+
+        synchronized void addPrediction(String pool, long estimatedMs) {
+            predictedWorkMs.merge(pool, estimatedMs, Long::sum);
+            predictedLongestMs.merge(pool, estimatedMs, Math::max);
+        }
+
+        synchronized long predictedWorkMs() {
+            return predictedWorkMs.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        synchronized long predictedMakespanMs(Map<String, Integer> workersByPool) {
+            return CostModel.predictMakespanMs(predictedWorkMs, predictedLongestMs, workersByPool);
+        }
+
+        // rows in input order, read lazily; a slot is only empty if the job never completed.
+        // Before end of input (partial summary) this covers the lines read so far.
+        Iterable<String> rows() {
+            int total = totalTasks;
+            int end = total >= 0 ? total : lineCount;
+
+            return () -> IntStream.range(0, end)
+                    .mapToObj(i -> segments[i >>> SEGMENT_BITS].rows[i & (SEGMENT_SIZE - 1)])
+                    .filter(Objects::nonNull)
+                    .iterator();
         }
     }
 
+    // One non-empty line of the input file
+    private record Line(int index, String analysisType, String url) { }
+
 
     public static void main(String[] args) {
         new Manager().start();
@@ -77,8 +274,14 @@ public class Manager {
 
     public void start() {
         System.out.println("[Manager] Manager started.");
+        dispatchers.values().forEach(FairDispatcher::start);
+        recoverJobs();
+        journal.startCheckpoints(JOURNAL_CHECKPOINT_MS);
+        stragglers.start();
         startLocalAppListener();
         startWorkerResultsListener();
+        startDeadLetterListener();
+        autoscalers.values().forEach(Autoscaler::start);
     }
 
 
@@ -104,7 +307,8 @@ public class Manager {
 
                             if (acceptingNewTasks) {
                                 System.out.println("[Manager] NEW_TASK received");
-                                jobPool.submit(() -> handleNewTask(msg));
+                                jobPool.submit(() -> handleNewTask(msg));   // acks msg itself
+                                continue;
                             } else {
                                 System.out.println("[Manager] Ignoring NEW_TASK (termination mode)");
                             }
@@ -122,6 +326,7 @@ public class Manager {
             }
 
             jobPool.shutdown();
+            dispatchPool.shutdown();
             System.out.println("[Manager] LocalApp Listener stopped.");
         });
 
@@ -131,29 +336,86 @@ public class Manager {
 
 
     // ========================================================================
-    // LISTENER: WORKER RESULTS
+    // LISTENER: WORKER RESULTS (RESULT_POLLERS threads, batched acks)
     // ========================================================================
     private void startWorkerResultsListener() {
+        for (int i = 0; i < RESULT_POLLERS; i++) {
+            Thread t = new Thread(this::pollWorkerResults, "results-poller-" + i);
+            t.start();
+        }
+
+        System.out.println("[Manager] WorkerResults Listener started with " + RESULT_POLLERS + " poller(s).");
+        startIngestionReporter();
+    }
+
+    private void pollWorkerResults() {
+        while (!jobs.isEmpty() || acceptingNewTasks) {
+            try {
+                List<Message> messages =
+                        SqsHelper.receiveMessagesWithSentTimestamp(workerResultsQueueUrl, 10);
+
+                // Ack only what was recorded; anything else is redelivered
+                List<String> recorded = new ArrayList<>();
+                long now = System.currentTimeMillis();
+
+                for (Message msg : messages) {
+                    try {
+                        handleWorkerDone(msg.body());
+                        recorded.add(msg.receiptHandle());
+
+                        resultsIngested.incrementAndGet();
+                        long sent = SqsHelper.sentTimestamp(msg);
+                        if (sent > 0) {
+                            maxResultLagMs.accumulateAndGet(now - sent, Math::max);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                if (!recorded.isEmpty()) {
+                    SqsHelper.deleteMessageBatch(workerResultsQueueUrl, recorded);
+                }
+
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        System.out.println("[Manager] " + Thread.currentThread().getName() + " stopped.");
+    }
+
+    // Every 30s: results/sec, backlog on the results queue, worst send→ingest lag
+    private void startIngestionReporter() {
         Thread t = new Thread(() -> {
-            System.out.println("[Manager] WorkerResults Listener started.");
+            long lastCount = 0;
+            long lastTime = System.currentTimeMillis();
 
             while (!jobs.isEmpty() || acceptingNewTasks) {
                 try {
-                    List<Message> messages = SqsHelper.receiveMessages(workerResultsQueueUrl, 10);
+                    Thread.sleep(INGESTION_REPORT_MS);
 
-                    for (Message msg : messages) {
-                        handleWorkerDone(msg.body());
-                        SqsHelper.deleteMessage(workerResultsQueueUrl, msg.receiptHandle());
-                    }
+                    long count = resultsIngested.get();
+                    long time = System.currentTimeMillis();
+                    double rate = (count - lastCount) * 1000.0 / Math.max(1, time - lastTime);
+                    long lag = maxResultLagMs.getAndSet(0);
+                    int backlog = SqsHelper.getQueueDepth(workerResultsQueueUrl);
+
+                    System.out.printf("[Manager] Ingestion: %.1f results/s | total=%d | backlog=%d | max lag=%d ms%n",
+                            rate, count, backlog, lag);
+
+                    lastCount = count;
+                    lastTime = time;
 
+                } catch (InterruptedException e) {
+                    return;
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    System.err.println("[Manager] Ingestion report failed: " + e.getMessage());
                 }
             }
+        }, "ingestion-reporter");
 
-            System.out.println("[Manager] WorkerResults Listener stopped.");
-        });
-
+        t.setDaemon(true);
         t.start();
     }
 
@@ -172,21 +434,17 @@ public class Manager {
         // -------------------------------------------------------
         case WORKER_DONE -> {
             MessageFormatter.WorkerDoneFields f = MessageFormatter.parseWorkerDone(body);
+            String row = f.analysisType() + "\t" + f.url() + "\t" + f.resultInfo() + "\t" + f.degradedSentences()
+                    + "\t" + f.retries();
 
             Job job = jobs.get(f.jobId());
-            if (job == null) return;
-
-            String jobKey = UUID.randomUUID().toString();
-            String value = f.analysisType() + "\t" + f.url() + "\t" + f.resultInfo();
-
-            job.results.put(jobKey, value);
-
-            int done = job.completed.incrementAndGet();
-            System.out.println("[Manager] Job " + job.jobId + ": " + done + "/" + job.totalTasks);
-
-            if (done == job.totalTasks) {
-                job.finished.complete(null);
+            if (job != null && recordRow(job, f.taskIndex(), row)) {
+                dispatcherFor(f.analysisType()).completed(1);
+                stragglers.completed(f.jobId(), f.taskIndex(), true);
+                costModel.observe(f.analysisType(), f.inputBytes(), f.elapsedMs());
             }
+
+            releaseFollowers(f.analysisType(), f.url(), f.jobId(), f.taskIndex(), row);
         }
 
         // -------------------------------------------------------
@@ -195,23 +453,23 @@ public class Manager {
         case WORKER_ERROR -> {
             MessageFormatter.WorkerErrorFields f = MessageFormatter.parseWorkerError(body);
 
-            Job job = jobs.get(f.jobId());
-            if (job == null) return;
-
             // HTML format expects:
             // <analysis>: <inputUrl> <short error text>
-            String jobKey = UUID.randomUUID().toString();
-            String value = f.analysisType() + "\t" + f.url() + "\t" + ("ERROR: " + f.errorMsg());
+            String error = "ERROR: " + f.errorMsg() + (f.deadLettered() ? " " + DEAD_LETTERED : "");
+            String row = f.analysisType() + "\t" + f.url() + "\t" + error + "\t0\t" + f.retries();
 
-            job.results.put(jobKey, value);
+            System.out.println("[Manager] ERROR reported for job " + f.jobId()
+                    + " (task " + f.taskIndex() + (f.deadLettered() ? ", dead-lettered" : "") + ")");
 
-            int done = job.completed.incrementAndGet();
-            System.out.println("[Manager] ERROR reported for job " + job.jobId
-                    + " (" + done + "/" + job.totalTasks + ")");
+            recordFailure(f.jobId(), f.analysisType(), f.url(), f.taskIndex(), row);
+        }
 
-            if (done == job.totalTasks) {
-                job.finished.complete(null);
-            }
+        // -------------------------------------------------------
+        // WORKER RETRY (transient failure, task re-queued with a delay)
+        // -------------------------------------------------------
+        case WORKER_RETRY -> {
+            MessageFormatter.WorkerRetryFields f = MessageFormatter.parseWorkerRetry(body);
+            stragglers.retrying(f.jobId(), f.taskIndices().get(0), f.nextAttempt(), f.delaySeconds() * 1000L);
         }
 
         default -> {
@@ -221,12 +479,111 @@ public class Manager {
 }
 
 
+    private void recordFailure(String jobId, String analysisType, String url, int index, String row) {
+        Job job = jobs.get(jobId);
+        if (job != null && recordRow(job, index, row)) {
+            dispatcherFor(analysisType).completed(1);
+            stragglers.completed(jobId, index, false);
+        }
+
+        releaseFollowers(analysisType, url, jobId, index, row);
+    }
+
+
+    // ========================================================================
+    // LISTENER: DEAD-LETTER QUEUE
+    // ========================================================================
+
+    // SQS moves a task here after it kept killing its worker, so no worker
+    // reported it: record its lines as errors, or their jobs never finish.
+    // Tasks workers dead-lettered themselves are marked reported and skipped
+    // (their own error rows say why). Handled tasks move to the archive queue
+    // (kept for inspection or a redrive until SQS retention drops them).
+    private void startDeadLetterListener() {
+        String deadLetterUrl = SqsHelper.createQueueIfNotExists(WorkerPools.DEAD_LETTER_QUEUE);
+        String archiveUrl = SqsHelper.createQueueIfNotExists(WorkerPools.DEAD_LETTER_ARCHIVE);
+
+        Thread t = new Thread(() -> {
+            while (!jobs.isEmpty() || acceptingNewTasks) {
+                try {
+                    for (Message msg : SqsHelper.receiveMessages(deadLetterUrl, 10)) {
+                        if (MessageFormatter.getMessageType(msg.body()) == MessageType.ANALYZE) {
+                            MessageFormatter.AnalyzeFields task = MessageFormatter.parseAnalyzeTask(msg.body());
+                            if (!task.reported()) recordDeadLettered(task);
+                        }
+
+                        SqsHelper.sendMessage(archiveUrl, msg.body());
+                        SqsHelper.deleteMessage(deadLetterUrl, msg.receiptHandle());
+                    }
+                } catch (Exception e) {
+                    System.err.println("[Manager] Dead-letter poll failed: " + e.getMessage());
+                }
+            }
+        }, "dead-letter-listener");
+
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void recordDeadLettered(MessageFormatter.AnalyzeFields task) {
+        List<String> types = task.analysisTypes();
+        List<Integer> indices = task.taskIndices();
+
+        for (int i = 0; i < types.size(); i++) {
+            String row = types.get(i) + "\t" + task.url() + "\t"
+                    + "ERROR: task failed repeatedly on workers " + DEAD_LETTERED
+                    + "\t0\t" + (task.attempt() - 1);
+            recordFailure(task.jobId(), types.get(i), task.url(), indices.get(i), row);
+        }
+    }
+
+
+    // Marks error rows whose task ran out of retries and went to the dead-letter queue
+    private static final String DEAD_LETTERED = "(dead-lettered)";
+
+    // Summary row for one input line (from a worker or the result cache).
+    // Redelivered or out-of-range results are dropped; returns false for those.
+    private boolean recordRow(Job job, int index, String row) {
+        if (!job.isKnown(index)) {
+            System.out.println("[Manager] Ignoring result with bad task index " + index
+                    + " for job " + job.jobId);
+            return false;
+        }
+
+        if (!job.markDone(index)) {
+            System.out.println("[Manager] Duplicate result for job " + job.jobId
+                    + " task " + index + " ignored.");
+            return false;
+        }
+
+        // journaled before the worker's message is acked
+        try {
+            job.log.row(index, row);
+        } catch (Exception e) {
+            System.err.println("[Manager] Journal write failed for job " + job.jobId + ": " + e.getMessage());
+        }
+
+        job.setRow(index, row);
+
+        int done = job.completed.incrementAndGet();
+        int total = job.totalTasks;
+        System.out.println("[Manager] Job " + job.jobId + ": " + done + "/" + (total < 0 ? "?" : total));
+
+        if (done == total) {
+            job.finished.complete(null);
+        }
+        return true;
+    }
+
+
 
     // ========================================================================
     // HANDLER: NEW TASK
     // ========================================================================
     private void handleNewTask(Message msg) {
 
+        boolean acked = false;
+
         try {
             MessageFormatter.NewTaskFields f = MessageFormatter.parseNewTask(msg.body());
             if (shouldTerminate) {
@@ -238,59 +595,511 @@ public class Manager {
             String bucket = AWS.getInstance().bucketName;
             String key = fullS3.substring(("s3://" + bucket + "/").length());
 
-            Path temp = Path.of("/tmp/" + UUID.randomUUID() + ".txt");
-            S3Helper.downloadFile(bucket, key, temp);
-
-            List<String> lines = java.nio.file.Files.readAllLines(temp);
-
-            // Keep only non-empty lines
-            List<String> nonEmptyLines = lines.stream()
-                    .map(String::trim)
-                    .filter(l -> !l.isEmpty())
-                    .toList();
+            if(f.terminate()){
+                shouldTerminate = true;
+                acceptingNewTasks = false;
+                System.out.println("[Manager] TERMINATE flag activated — no more NEW_TASK will be accepted.");
+            }
 
-            // Create job
+            // Create job; its size is only known once the whole input has been read.
+            // The NEW_TASK is acked only once the job is in the journal.
+            // The deadline arrives as a budget and is dated here, on the Manager's clock.
             String jobId = UUID.randomUUID().toString();
-            Job job = new Job(jobId, f.callbackQueue(), nonEmptyLines.size());
+            long deadlineMillis = f.deadlineMillis(System.currentTimeMillis());
+            JobJournal.JobLog log = journal.create(jobId, f.callbackQueue(), f.n(), key, deadlineMillis);
+            Job job = new Job(jobId, f.callbackQueue(), f.n(), deadlineMillis, log);
             jobs.put(jobId, job);
+            scheduleDeadline(job, bucket);
 
-            System.out.println("[Manager] Job created. " + nonEmptyLines.size() + " tasks.");
+            SqsHelper.deleteMessage(managerInputQueueUrl, msg.receiptHandle());
+            acked = true;
 
-            // Send tasks to workers
-            for (String line : nonEmptyLines) {
-                String[] p = line.split("\t");
-                String analysisType = p[0];
-                String url = p[1];
+            System.out.println("[Manager] Job " + jobId + " created, streaming input.");
 
-                String msgOut = MessageFormatter.formatAnalyzeTask(analysisType, url, jobId);
-                SqsHelper.sendMessage(workerTasksQueueUrl, msgOut);
-            }
+            ingest(job, bucket, key, 0);
 
-            // Create workers if needed
-            int neededWorkers = (int) Math.ceil(nonEmptyLines.size() / (double) f.n());
-            int requiredWorkers = Math.max(neededWorkers - currentRunningWorkers.get(), 0);
+        } catch (Exception e) {
+            e.printStackTrace();
 
-            requiredWorkers = Math.min(18 - currentRunningWorkers.get(), requiredWorkers);
-            if (requiredWorkers > 0) {
-                currentRunningWorkers.addAndGet(requiredWorkers);
-                System.out.println("[Manager] Creating " + requiredWorkers + " new worker(s).");
-                Ec2Helper.createWorkers(requiredWorkers);
+        } finally {
+            if (!acked) {
+                SqsHelper.deleteMessage(managerInputQueueUrl, msg.receiptHandle());
             }
-            else {
-                System.out.println("[EC2] Enough workers running. Currently: " + currentRunningWorkers.get());
+        }
+    }
+
+    // Stream the input and dispatch every INGEST_BATCH_LINES lines, so workers
+    // start before the file has been fully read. skipLines > 0 resumes a
+    // recovered job after the lines its journal already holds.
+    // While the job has MAX_PENDING_LINES waiting in a dispatcher, the stream
+    // is closed; reading resumes at the same byte offset once they drain.
+    private void ingest(Job job, String bucket, String key, int skipLines) {
+
+        String jobId = job.jobId;
+        int flushed = skipLines;
+
+        try {
+            List<Line> batch = new ArrayList<>();
+            int dispatched = 0;
+            int cacheHits = 0;
+            int coalesced = 0;
+            int accepted = 0;
+
+            long offset = 0;
+            boolean endOfInput = false;
+
+            while (!endOfInput) {
+                try (LineReader reader = new LineReader(S3Helper.openObject(bucket, key, offset), offset)) {
+
+                    String raw;
+                    while (true) {
+                        if ((raw = reader.readLine()) == null) {
+                            endOfInput = true;
+                            break;
+                        }
+
+                        String trimmed = raw.trim();
+                        if (trimmed.isEmpty()) continue;
+
+                        String[] p = trimmed.split("\t");
+                        if (p.length < 2) {
+                            System.out.println("[Manager] Skipping malformed input line: " + trimmed);
+                            continue;
+                        }
+
+                        if (accepted++ < skipLines) continue;
+
+                        Line line = new Line(job.addLine(p[0], p[1]), p[0], p[1]);
+                        job.log.task(line.index(), line.analysisType(), line.url());
+                        batch.add(line);
+
+                        if (batch.size() >= INGEST_BATCH_LINES) {
+                            DispatchStats stats = dispatchJournaled(job, batch);
+                            dispatched += stats.tasks();
+                            cacheHits += stats.cacheHits();
+                            coalesced += stats.coalesced();
+                            flushed += batch.size();
+                            batch.clear();
+
+                            requestAutoscale();
+                            if (backlogFull(job)) break;
+                        }
+                    }
+                    offset = reader.offset();
+                }
+
+                if (!endOfInput) awaitBacklog(job);
             }
 
-            if(f.terminate()){
-                shouldTerminate = true;
-                acceptingNewTasks = false;
-                System.out.println("[Manager] TERMINATE flag activated — no more NEW_TASK will be accepted.");
+            if (!batch.isEmpty()) {
+                DispatchStats stats = dispatchJournaled(job, batch);
+                dispatched += stats.tasks();
+                cacheHits += stats.cacheHits();
+                coalesced += stats.coalesced();
+                flushed += batch.size();
+
+                requestAutoscale();
             }
 
+            System.out.println("[Manager] Job " + jobId + ": " + flushed + " tasks, "
+                    + dispatched + " fused task(s) queued, "
+                    + cacheHits + " line(s) served from cache, "
+                    + coalesced + " attached to tasks already in flight.");
+
             // Wait for completion then finish job
             job.finished.whenComplete((r, ex) -> {
                 finishJob(jobId, bucket);
             });
 
+            job.log.sealed(flushed);
+            job.seal(flushed);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+
+            // Input stream broke off: summarize the lines that were dispatched
+            if (job.totalTasks < 0) {
+                System.out.println("[Manager] Job " + jobId + " input truncated after " + flushed + " line(s).");
+
+                job.finished.whenComplete((r, ex) -> finishJob(jobId, bucket));
+                job.log.sealed(flushed);
+                job.seal(flushed);
+            }
+        }
+    }
+
+    private boolean backlogFull(Job job) {
+        for (FairDispatcher d : dispatchers.values()) {
+            if (d.pendingLines(job.jobId) >= MAX_PENDING_LINES) return true;
+        }
+        return false;
+    }
+
+    private void awaitBacklog(Job job) throws InterruptedException {
+        for (FairDispatcher d : dispatchers.values()) {
+            d.awaitBacklogBelow(job.jobId, MAX_PENDING_LINES);
+        }
+    }
+
+    // TASK records reach the journal before their tasks are queued (SENT once in SQS)
+    private DispatchStats dispatchJournaled(Job job, List<Line> batch) {
+        job.log.flush();
+        return dispatchBatch(job, batch);
+    }
+
+    private record DispatchStats(int tasks, int cacheHits, int coalesced) { }
+
+    // Answer lines with a fresh cached result at once; fuse the rest by pool
+    // and URL, estimate each task's time from its input size (if already
+    // known, see CostModel) and queue them on that pool's fair dispatcher,
+    // longest first
+    private DispatchStats dispatchBatch(Job job, List<Line> batch) {
+
+        // Group lines by pool and URL: one fused task downloads and parses each
+        // text once for all of that pool's types
+        Map<String, List<Line>> toDispatch = new LinkedHashMap<>();
+        Map<String, CompletableFuture<ResultCache.Entry>> cached = new HashMap<>();
+        int cacheHits = 0;
+        int coalesced = 0;
+
+        // One HEAD per distinct (url, type), all in flight at once
+        for (Line line : batch) {
+            cached.computeIfAbsent(line.url() + "\t" + line.analysisType(),
+                    k -> CompletableFuture.supplyAsync(
+                            () -> ResultCache.lookupFresh(line.url(), line.analysisType()), cacheLookupPool)
+                            .exceptionally(e -> null));
+        }
+
+        for (Line line : batch) {
+            ResultCache.Entry hit = cached.get(line.url() + "\t" + line.analysisType()).join();
+
+            if (hit != null) {
+                recordRow(job, line.index(), line.analysisType() + "\t" + line.url() + "\t"
+                        + hit.resultKey() + "\t" + hit.degradedSentences());
+                cacheHits++;
+            } else if (attachToFlight(job, line)) {
+                coalesced++;
+            } else {
+                String pool = WorkerPools.forType(line.analysisType()).name();
+                toDispatch.computeIfAbsent(pool + "\t" + line.url(), k -> new ArrayList<>()).add(line);
+            }
+        }
+
+        Map<String, Long> sizes = costModel.sizesOf(toDispatch.values().stream()
+                .map(urlLines -> urlLines.get(0).url())
+                .distinct()
+                .toList());
+
+        // Queue tasks for workers, per pool
+        Map<String, List<FairDispatcher.Task>> tasksByPool = new LinkedHashMap<>();
+        toDispatch.forEach((poolAndUrl, urlLines) -> {
+            String[] k = poolAndUrl.split("\t", 2);
+            List<String> types = urlLines.stream().map(Line::analysisType).toList();
+            List<Integer> indices = urlLines.stream().map(Line::index).toList();
+
+            long estimatedMs = costModel.estimateMs(types, sizes.getOrDefault(k[1], -1L));
+            job.addPrediction(k[0], estimatedMs);
+
+            tasksByPool.computeIfAbsent(k[0], p -> new ArrayList<>()).add(new FairDispatcher.Task(job.jobId,
+                    MessageFormatter.formatAnalyzeTask(types, k[1], job.jobId, indices),
+                    indices,
+                    estimatedMs));
+        });
+
+        tasksByPool.forEach((pool, tasks) ->
+                dispatchers.get(pool).enqueue(job.jobId, job.deadlineMillis, tasks));
+
+        return new DispatchStats(toDispatch.size(), cacheHits, coalesced);
+    }
+
+    private FairDispatcher dispatcherFor(String analysisType) {
+        return dispatchers.get(WorkerPools.forType(analysisType).name());
+    }
+
+    // New work was queued: let every pool re-evaluate its fleet now
+    private void requestAutoscale() {
+        autoscalers.values().forEach(Autoscaler::requestTick);
+    }
+
+    // ========================================================================
+    // SINGLE-FLIGHT: one ANALYZE per (type, url) in flight across all jobs
+    // ========================================================================
+
+    // The line whose task was sent, and the lines of other jobs waiting on it
+    private record Waiter(Job job, int index) { }
+
+    private static final class Flight {
+        final String leaderJobId;
+        final int leaderIndex;
+        final List<Waiter> followers = new ArrayList<>();   // changed only inside inFlight.compute
+        boolean sent = false;                               // ditto; the leader's task is in SQS
+
+        Flight(String leaderJobId, int leaderIndex) {
+            this.leaderJobId = leaderJobId;
+            this.leaderIndex = leaderIndex;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private static String flightKey(String analysisType, String url) {
+        return analysisType + "\t" + url;
+    }
+
+    // true: the line waits for a task already in flight; false: it gets its own.
+    // Only tasks already sent are joined: one still pending in the dispatcher
+    // may be queued behind its own job's fair share, and waiting on it would
+    // undo the small job's turn. Jobs with a deadline never wait on another
+    // job's task at all.
+    private boolean attachToFlight(Job job, Line line) {
+        boolean[] attached = { false };
+
+        inFlight.compute(flightKey(line.analysisType(), line.url()), (k, flight) -> {
+            if (flight == null) {
+                return new Flight(job.jobId, line.index());
+            }
+            if (flight.sent && job.deadlineMillis <= 0) {
+                flight.followers.add(new Waiter(job, line.index()));
+                attached[0] = true;
+            }
+            return flight;
+        });
+
+        return attached[0];
+    }
+
+    // The leader's result (or error) answers every waiting line as well
+    private void releaseFollowers(String analysisType, String url, String jobId, int index, String row) {
+        Flight[] done = { null };
+
+        inFlight.computeIfPresent(flightKey(analysisType, url), (k, flight) -> {
+            if (!flight.leaderJobId.equals(jobId) || flight.leaderIndex != index) return flight;
+            done[0] = flight;
+            return null;
+        });
+
+        if (done[0] == null) return;
+
+        for (Waiter w : done[0].followers) {
+            if (jobs.get(w.job().jobId) == w.job()) {
+                recordRow(w.job(), w.index(), row);
+            }
+        }
+
+        if (!done[0].followers.isEmpty()) {
+            System.out.println("[Manager] Result for " + analysisType + " " + url + " shared with "
+                    + done[0].followers.size() + " waiting line(s).");
+        }
+    }
+
+    // One dispatcher round: send, then journal which lines are now in SQS
+    // Returns the tasks that could not be queued; only the others count as sent
+    private List<FairDispatcher.Task> sendTasks(String pool, String queueUrl, List<FairDispatcher.Task> round) {
+        Set<Integer> failed = new HashSet<>(
+                dispatchTasks(queueUrl, round.stream().map(FairDispatcher.Task::body).toList()));
+
+        List<FairDispatcher.Task> sent = new ArrayList<>();
+        List<FairDispatcher.Task> unsent = new ArrayList<>();
+        for (int i = 0; i < round.size(); i++) {
+            (failed.contains(i) ? unsent : sent).add(round.get(i));
+        }
+
+        stragglers.sent(pool, queueUrl, sent);
+        markFlightsSent(sent);
+
+        for (FairDispatcher.Task t : sent) {
+            Job job = jobs.get(t.jobId());
+            if (job == null) continue;
+
+            try {
+                job.log.sent(t.indices());
+            } catch (Exception e) {
+                System.err.println("[Manager] Journal write failed for job " + job.jobId + ": " + e.getMessage());
+            }
+        }
+        return unsent;
+    }
+
+    // Lines of other jobs may join these tasks from now on
+    private void markFlightsSent(List<FairDispatcher.Task> round) {
+        for (FairDispatcher.Task t : round) {
+            MessageFormatter.AnalyzeFields task = MessageFormatter.parseAnalyzeTask(t.body());
+            List<String> types = task.analysisTypes();
+            List<Integer> indices = task.taskIndices();
+
+            for (int i = 0; i < types.size(); i++) {
+                int index = indices.get(i);
+                inFlight.computeIfPresent(flightKey(types.get(i), task.url()), (k, flight) -> {
+                    if (flight.leaderJobId.equals(t.jobId()) && flight.leaderIndex == index) {
+                        flight.sent = true;
+                    }
+                    return flight;
+                });
+            }
+        }
+    }
+
+    // Batches of 10 sent by up to DISPATCH_SENDERS threads; returns once every
+    // batch call is done, with the positions of the messages that were not queued
+    private List<Integer> dispatchTasks(String queueUrl, List<String> taskMessages) {
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<List<Integer>>> sends = new ArrayList<>();
+
+        for (int from = 0; from < taskMessages.size(); from += SqsHelper.MAX_BATCH) {
+            int offset = from;
+            List<String> batch = taskMessages.subList(from,
+                    Math.min(from + SqsHelper.MAX_BATCH, taskMessages.size()));
+
+            // a failed call loses its whole batch, but not the others
+            sends.add(CompletableFuture.supplyAsync(
+                    () -> SqsHelper.sendMessageBatch(queueUrl, batch), dispatchPool)
+                    .exceptionally(e -> {
+                        System.err.println("[Manager] Batch send failed: " + e.getMessage());
+                        return IntStream.range(0, batch.size()).boxed().toList();
+                    })
+                    .thenApply(failed -> failed.stream().map(i -> offset + i).toList()));
+        }
+
+        List<Integer> failed = new ArrayList<>();
+        sends.forEach(f -> failed.addAll(f.join()));
+
+        System.out.println("[Manager] Queued " + (taskMessages.size() - failed.size()) + " of "
+                + taskMessages.size() + " task(s) in " + sends.size() + " batch call(s), "
+                + (System.currentTimeMillis() - start) + " ms.");
+        return failed;
+    }
+
+
+
+    // ========================================================================
+    // RECOVERY: rebuild jobs from the journal after a restart
+    // ========================================================================
+    private void recoverJobs() {
+        long start = System.currentTimeMillis();
+
+        List<Path> logs;
+        try {
+            logs = journal.pendingLogs();
+        } catch (IOException e) {
+            System.err.println("[Manager] Cannot read journal: " + e.getMessage());
+            return;
+        }
+        if (logs.isEmpty()) return;
+
+        // Replays run in parallel; whatever is not back by the deadline is left
+        // on disk for the next start, so startup time stays bounded
+        ExecutorService replayPool = Executors.newFixedThreadPool(
+                Math.min(logs.size(), Runtime.getRuntime().availableProcessors()));
+        List<Future<JobJournal.Recovered>> replays = logs.stream()
+                .map(p -> replayPool.submit(() -> JobJournal.replay(p)))
+                .toList();
+
+        long deadline = start + RECOVERY_TIMEOUT_MS;
+        int recovered = 0;
+        int rows = 0;
+
+        for (int i = 0; i < replays.size(); i++) {
+            try {
+                JobJournal.Recovered r = replays.get(i).get(
+                        Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                restoreJob(r);
+                recovered++;
+                rows += r.rows().size();
+
+            } catch (TimeoutException e) {
+                System.err.println("[Manager] Recovery deadline hit, skipping " + logs.get(i));
+            } catch (Exception e) {
+                System.err.println("[Manager] Could not recover " + logs.get(i) + ": " + e.getMessage());
+            }
+        }
+        replayPool.shutdownNow();
+
+        System.out.println("[Manager] Recovered " + recovered + "/" + logs.size() + " job(s), "
+                + rows + " result(s) from journal in " + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+    private void restoreJob(JobJournal.Recovered r) {
+        Job job = new Job(r.jobId(), r.callbackQueue(), r.tasksPerWorker(), r.deadlineMillis(),
+                journal.open(r.jobId()));
+
+        for (JobJournal.Task t : r.tasks()) {
+            job.addLine(t.analysisType(), t.url());
+        }
+
+        r.rows().forEach((index, row) -> {
+            if (job.isKnown(index) && job.markDone(index)) {
+                job.setRow(index, row);
+                job.completed.incrementAndGet();
+            }
+        });
+
+        jobs.put(job.jobId, job);
+        if (!r.partialSent()) {
+            scheduleDeadline(job, AWS.getInstance().bucketName);
+        }
+        jobPool.submit(() -> resumeJob(job, r));
+    }
+
+    // Every journaled line without a ROW is queued again, sent or not: a
+    // result acked after the last S3 checkpoint is gone from SQS, and a
+    // Manager on a new instance never saw its ROW. Results that are still in
+    // the results queue arrive as well; markDone keeps only the first.
+    private void resumeJob(Job job, JobJournal.Recovered r) {
+        String bucket = AWS.getInstance().bucketName;
+
+        try {
+            List<Line> unanswered = r.tasks().stream()
+                    .filter(t -> !r.rows().containsKey(t.index()))
+                    .map(t -> new Line(t.index(), t.analysisType(), t.url()))
+                    .toList();
+
+            if (!unanswered.isEmpty()) {
+                dispatchJournaled(job, unanswered);
+
+                long wasSent = unanswered.stream().filter(l -> r.sent().contains(l.index())).count();
+                System.out.println("[Manager] Job " + job.jobId + ": re-queued " + unanswered.size()
+                        + " line(s) without a result (" + wasSent + " sent before the restart).");
+            }
+
+            if (r.sealedTotal() >= 0) {
+                job.finished.whenComplete((res, ex) -> finishJob(job.jobId, bucket));
+                job.seal(r.sealedTotal());
+            } else {
+                ingest(job, bucket, r.inputKey(), r.tasks().size());
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+
+
+    // ========================================================================
+    // DEADLINE: partial summary, rows without a result marked PENDING
+    // ========================================================================
+    private void scheduleDeadline(Job job, String bucket) {
+        if (job.deadlineMillis <= 0) return;
+
+        long delay = Math.max(0, job.deadlineMillis - System.currentTimeMillis());
+        deadlineTimer.schedule(() -> sendPartialSummary(job, bucket), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendPartialSummary(Job job, String bucket) {
+        // finished in time: the final summary is (or will be) sent instead
+        if (job.finished.isDone() || jobs.get(job.jobId) != job) return;
+
+        try {
+            String summaryKey = "summaries/" + job.jobId + "-partial.html";
+            writeSummary(job, bucket, summaryKey);
+
+            String msg = MessageFormatter.formatSummaryDone(job.jobId, summaryKey, true);
+            SqsHelper.sendMessage(job.callbackQueue, msg);
+            job.log.partialSent();
+
+            System.out.println("[Manager] Deadline reached for job " + job.jobId + ": partial summary sent ("
+                    + job.completed.get() + " row(s) done).");
+
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -307,19 +1116,19 @@ public class Manager {
             Job job = jobs.get(jobId);
             if (job == null) return;
 
-            String html = HtmlBuilder.build(job.results);
-            Path out = Path.of("/tmp/" + jobId + ".html");
-
-            java.nio.file.Files.writeString(out, html);
-
             String summaryKey = "summaries/" + jobId + ".html";
-            S3Helper.uploadFile(bucket, summaryKey, out);
+            writeSummary(job, bucket, summaryKey);
 
             String msg = MessageFormatter.formatSummaryDone(jobId, summaryKey);
             SqsHelper.sendMessage(job.callbackQueue, msg);
 
             System.out.println("[Manager] Summary sent for job " + jobId);
 
+            dispatchers.values().forEach(d -> d.removeJob(jobId));
+            stragglers.removeJob(jobId);
+
+            journal.complete(jobId);
+
             jobs.remove(jobId);
 
             if(shouldTerminate && jobs.isEmpty()){
@@ -334,6 +1143,59 @@ public class Manager {
     }
 
 
+    // Rows are rendered straight into a multipart upload: no temp file, and
+    // memory use does not grow with the size of the summary
+    private void writeSummary(Job job, String bucket, String summaryKey) throws IOException {
+        long start = System.currentTimeMillis();
+
+        S3MultipartOutputStream upload =
+                new S3MultipartOutputStream(bucket, summaryKey, "text/html; charset=utf-8");
+        Writer out = new BufferedWriter(new OutputStreamWriter(upload, StandardCharsets.UTF_8), SUMMARY_BUFFER);
+
+        try {
+            HtmlBuilder.write(job.rows(), List.of(predictionNote(job), retryNote(job)), out);
+            out.close();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+
+        System.out.println("[Manager] Summary for job " + job.jobId + " written in "
+                + (System.currentTimeMillis() - start) + " ms.");
+    }
+
+
+    // Predicted wall-clock time, each pool's work spread over its worker budget
+    private String predictionNote(Job job) {
+        Map<String, Integer> workersByPool = new HashMap<>();
+        autoscalers.forEach((pool, a) -> workersByPool.put(pool, a.config().maxWorkers()));
+
+        return CostModel.describe(job.predictedMakespanMs(workersByPool), job.predictedWorkMs(),
+                System.currentTimeMillis() - job.startedMillis);
+    }
+
+
+    // Retries after transient failures, counted from the rows so that
+    // recovered jobs (rows replayed from the journal) are included
+    private static String retryNote(Job job) {
+        long retries = 0;
+        int retriedLines = 0;
+        int deadLettered = 0;
+
+        for (String row : job.rows()) {
+            String[] p = row.split("\t");
+            if (p.length > 4 && !p[4].equals("0")) {
+                retries += Integer.parseInt(p[4]);
+                retriedLines++;
+            }
+            if (p[2].endsWith(DEAD_LETTERED)) deadLettered++;
+        }
+
+        return "Retries: " + retries + " on " + retriedLines + " line(s) after transient failures; "
+                + deadLettered + " line(s) dead-lettered.";
+    }
+
+
     // ========================================================================
     // TERMINATE
     // ========================================================================
@@ -341,6 +1203,10 @@ public class Manager {
     private void shutdownManager() {
         System.out.println("[Manager] TERMINATE — waiting for all running jobs...");
 
+        autoscalers.values().forEach(Autoscaler::stop);
+        dispatchers.values().forEach(FairDispatcher::stop);
+        stragglers.stop();
+
         Ec2Helper.terminateAllWorkers();
         System.out.println("[Manager] All workers terminated.");
 
@@ -370,4 +1236,13 @@ public class Manager {
     }
 
 
+    private static int readIntEnv(String name, int def) {
+        String env = System.getenv(name);
+        if (env != null) {
+            try {
+                return Math.max(1, Integer.parseInt(env.trim()));
+            } catch (NumberFormatException ignored) {}
+        }
+        return def;
+    }
 }
@@ -0,0 +1,265 @@
+package ass1.manager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import ass1.common.MessageFormatter;
+import ass1.common.SqsHelper;
+import ass1.common.WorkerPools;
+
+// Speculative execution: a task that has been out far longer than tasks of
+// its analysis type usually take is sent again, so one slow or stuck worker
+// cannot hold a job open. The first result for a line wins; Job.markDone
+// drops the late one, so nothing is counted twice.
+//
+// A task is a straggler once it has been out longer than
+//   factor × max(p95 of recent completion times of its slowest type, its own estimate)
+// where the estimate (CostModel) keeps a legitimately huge input from being
+// duplicated. Time runs from the send, so only pools whose queue is drained
+// are checked: there, every task sent has already been taken by a worker.
+// Each task is duplicated at most once, and at most maxSpeculative at a time.
+//
+// A task a worker re-queued after a transient failure is timed again from
+// the end of its backoff delay (invisible to SQS until then), and its
+// duplicate carries the same attempt number, so the retry budget holds.
+public class StragglerMonitor {
+
+    private static final long CHECK_PERIOD_MS = 5000;
+    private static final int WINDOW = 200;        // completion times kept per type
+    private static final int MIN_SAMPLES = 20;    // no speculation before this many
+
+    private record LineKey(String jobId, int index) { }
+
+    private static final class Running {
+        final String pool;
+        final String queueUrl;
+        final FairDispatcher.Task task;
+        final Set<String> baseTypes;
+        long sentAtMillis;     // or when the current retry became visible
+        int attempt = 1;
+        int remaining;
+        boolean speculated = false;
+
+        Running(String pool, String queueUrl, FairDispatcher.Task task, Set<String> baseTypes, long sentAtMillis) {
+            this.pool = pool;
+            this.queueUrl = queueUrl;
+            this.task = task;
+            this.baseTypes = baseTypes;
+            this.sentAtMillis = sentAtMillis;
+            this.remaining = task.indices().size();
+        }
+    }
+
+    private final int factor;
+    private final int maxSpeculative;
+    private final Function<String, SqsHelper.QueueStats> queueStats;
+    private final BiConsumer<String, String> sender;   // (queueUrl, body)
+    private final LongSupplier clock;
+
+    // guarded by this
+    private final Map<LineKey, Running> byLine = new HashMap<>();
+    private final Set<Running> running = new LinkedHashSet<>();
+    private final Map<String, ArrayDeque<Long>> samples = new HashMap<>();
+    private int speculating = 0;
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "straggler-monitor");
+                t.setDaemon(true);
+                return t;
+            });
+
+    public StragglerMonitor(int factor,
+                            int maxSpeculative,
+                            Function<String, SqsHelper.QueueStats> queueStats,
+                            BiConsumer<String, String> sender,
+                            LongSupplier clock) {
+        this.factor = factor;
+        this.maxSpeculative = maxSpeculative;
+        this.queueStats = queueStats;
+        this.sender = sender;
+        this.clock = clock;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::safeCheck, CHECK_PERIOD_MS, CHECK_PERIOD_MS, TimeUnit.MILLISECONDS);
+        System.out.println("[Stragglers] Started: factor " + factor + ", at most " + maxSpeculative + " duplicate(s) out.");
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // Tasks of one pool are now in its queue
+    public synchronized void sent(String pool, String queueUrl, List<FairDispatcher.Task> tasks) {
+        long now = clock.getAsLong();
+
+        for (FairDispatcher.Task t : tasks) {
+            Set<String> baseTypes = new LinkedHashSet<>();
+            for (String type : MessageFormatter.parseAnalyzeTask(t.body()).analysisTypes()) {
+                baseTypes.add(WorkerPools.baseType(type));
+            }
+
+            Running r = new Running(pool, queueUrl, t, baseTypes, now);
+            running.add(r);
+            for (int index : t.indices()) {
+                byLine.put(new LineKey(t.jobId(), index), r);
+            }
+        }
+    }
+
+    // A worker re-queued the task with a delay: restart its clock at the end
+    // of the delay and duplicate at the new attempt number from now on
+    public synchronized void retrying(String jobId, int index, int nextAttempt, long delayMs) {
+        Running r = byLine.get(new LineKey(jobId, index));
+        if (r == null) return;
+
+        r.sentAtMillis = clock.getAsLong() + delayMs;
+        r.attempt = Math.max(r.attempt, nextAttempt);
+    }
+
+    // First result for a line. succeeded: its time joins the distribution
+    // once the whole task is answered (errors are not representative).
+    public synchronized void completed(String jobId, int index, boolean succeeded) {
+        Running r = byLine.remove(new LineKey(jobId, index));
+        if (r == null || --r.remaining > 0) return;
+
+        running.remove(r);
+        if (r.speculated) speculating--;
+
+        if (succeeded) {
+            long elapsed = clock.getAsLong() - r.sentAtMillis;
+            for (String type : r.baseTypes) {
+                ArrayDeque<Long> window = samples.computeIfAbsent(type, k -> new ArrayDeque<>());
+                window.addLast(elapsed);
+                if (window.size() > WINDOW) window.removeFirst();
+            }
+        }
+    }
+
+    // Job finished or abandoned
+    public synchronized void removeJob(String jobId) {
+        running.removeIf(r -> {
+            if (!r.task.jobId().equals(jobId)) return false;
+            if (r.speculated) speculating--;
+            return true;
+        });
+        byLine.keySet().removeIf(k -> k.jobId().equals(jobId));
+    }
+
+    private void safeCheck() {
+        try {
+            check();
+        } catch (Exception e) {
+            System.err.println("[Stragglers] Check failed: " + e.getMessage());
+        }
+    }
+
+    // Candidates are picked under the lock, queue stats and sends happen
+    // outside it, so a slow SQS call never blocks the result listeners
+    public int check() {
+        long now = clock.getAsLong();
+        List<Candidate> candidates = candidates(now);
+        if (candidates.isEmpty()) return 0;
+
+        Map<String, Boolean> drained = new HashMap<>();
+        for (Candidate c : candidates) {
+            drained.computeIfAbsent(c.running().queueUrl, q -> queueStats.apply(q).visible() == 0);
+        }
+
+        int sent = 0;
+        for (Candidate c : reserve(candidates, drained)) {
+            Running r = c.running();
+            try {
+                sender.accept(r.queueUrl, c.body());
+            } catch (Exception e) {
+                release(r);
+                System.err.println("[Stragglers] Duplicate of task " + r.task.indices()
+                        + " not sent: " + e.getMessage());
+                continue;
+            }
+            sent++;
+
+            System.out.println("[Stragglers] Job " + r.task.jobId() + ": task " + r.task.indices()
+                    + " out for " + (now - c.sentAtMillis()) + " ms (threshold " + c.thresholdMs()
+                    + " ms), duplicate sent to pool " + r.pool + ".");
+        }
+        return sent;
+    }
+
+    private record Candidate(Running running, long sentAtMillis, long thresholdMs, String body) { }
+
+    // Tasks past their threshold, at most as many as may still be duplicated
+    private synchronized List<Candidate> candidates(long now) {
+        Map<String, Long> p95 = new HashMap<>();
+        List<Candidate> result = new ArrayList<>();
+
+        for (Running r : running) {
+            if (speculating + result.size() >= maxSpeculative) break;
+            if (r.speculated) continue;
+
+            long threshold = r.task.estimatedMs();
+            boolean enoughSamples = true;
+            for (String type : r.baseTypes) {
+                Long p = p95.computeIfAbsent(type, this::p95Of);
+                if (p < 0) enoughSamples = false;
+                else threshold = Math.max(threshold, p);
+            }
+            if (!enoughSamples || now - r.sentAtMillis <= factor * threshold) continue;
+
+            String body = r.attempt > 1
+                    ? MessageFormatter.formatAnalyzeRetry(MessageFormatter.parseAnalyzeTask(r.task.body()), r.attempt)
+                    : r.task.body();
+            result.add(new Candidate(r, r.sentAtMillis, factor * threshold, body));
+        }
+        return result;
+    }
+
+    // Marks the candidates of drained queues as speculated; skips tasks that
+    // completed or were re-queued by a worker while the stats were fetched
+    private synchronized List<Candidate> reserve(List<Candidate> candidates, Map<String, Boolean> drained) {
+        List<Candidate> result = new ArrayList<>();
+
+        for (Candidate c : candidates) {
+            Running r = c.running();
+            if (speculating >= maxSpeculative) break;
+            if (!drained.get(r.queueUrl) || !running.contains(r) || r.speculated) continue;
+            if (r.sentAtMillis != c.sentAtMillis()) continue;
+
+            r.speculated = true;
+            speculating++;
+            result.add(c);
+        }
+        return result;
+    }
+
+    // The duplicate could not be sent: it may be tried again next check
+    private synchronized void release(Running r) {
+        if (!r.speculated) return;
+        r.speculated = false;
+        if (running.contains(r)) speculating--;
+    }
+
+    // -1 until there are enough samples
+    private long p95Of(String baseType) {
+        ArrayDeque<Long> window = samples.get(baseType);
+        if (window == null || window.size() < MIN_SAMPLES) return -1;
+
+        long[] sorted = window.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+    }
+}
@@ -0,0 +1,82 @@
+package ass1.startup;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Measures worker time-to-first-parse in fresh JVMs, with class-data sharing
+// off and with a CDS archive of the shaded worker jar.
+//
+// Usage: java -jar startup-benchmark.jar <worker-fat.jar> [runs]
+public class StartupBenchmark {
+
+    private static final String WARM_UP_MAIN = "ass1.worker.WarmUp";
+    private static final String MARKER = "FIRST_PARSE_MS=";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java -jar startup-benchmark.jar <worker-fat.jar> [runs]");
+            return;
+        }
+
+        Path jar = Path.of(args[0]).toAbsolutePath();
+        int runs = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        Path archive = jar.resolveSibling(jar.getFileName() + ".jsa");
+
+        // 1) Dump the CDS archive once (one training run of the same entry point)
+        if (!Files.exists(archive)) {
+            System.out.println("[BENCH] Creating CDS archive: " + archive);
+            runOnce(jar, "-XX:ArchiveClassesAtExit=" + archive);
+        }
+
+        // 2) Alternate modes so drift (page cache, thermal) hits both equally
+        List<Long> plainTimes = new ArrayList<>();
+        List<Long> cdsTimes = new ArrayList<>();
+
+        for (int i = 1; i <= runs; i++) {
+            // no CDS at all, not even the JDK's default archive
+            plainTimes.add(runOnce(jar, "-Xshare:off"));
+            cdsTimes.add(runOnce(jar, "-XX:SharedArchiveFile=" + archive));
+            System.out.printf("[BENCH] run %d/%d | plain=%d ms | cds=%d ms%n",
+                    i, runs, plainTimes.get(i - 1), cdsTimes.get(i - 1));
+        }
+
+        report("without CDS", plainTimes);
+        report("with CDS   ", cdsTimes);
+    }
+
+    // Time from JVM start to first parse, as reported by the child
+    private static long runOnce(Path jar, String jvmFlag) throws Exception {
+        Process p = new ProcessBuilder("java", jvmFlag, "-cp", jar.toString(), WARM_UP_MAIN)
+                .redirectErrorStream(true)
+                .start();
+
+        long firstParseMs = -1;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith(MARKER)) {
+                    firstParseMs = Long.parseLong(line.substring(MARKER.length()).trim());
+                }
+            }
+        }
+
+        int exit = p.waitFor();
+        if (exit != 0 || firstParseMs < 0) {
+            throw new IllegalStateException("Child JVM failed (exit " + exit + ", flag " + jvmFlag + ")");
+        }
+        return firstParseMs;
+    }
+
+    private static void report(String label, List<Long> times) {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        long median = sorted.get(sorted.size() / 2);
+        System.out.printf("[BENCH] %s | min=%d ms | median=%d ms | max=%d ms%n",
+                label, sorted.get(0), median, sorted.get(sorted.size() - 1));
+    }
+}
@@ -0,0 +1,32 @@
+package ass1.worker;
+
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+
+// A backend that turns one sentence into analysis output.
+// An engine may serve several analysis types from a single pass over the
+// sentence (one PCFG parse → POS, CONSTITUENCY and DEPENDENCY).
+// Engines are shared by all slots and must be thread-safe.
+public interface AnalysisEngine {
+
+    // Short name used to select the engine per task ("CONSTITUENCY@sr")
+    String name();
+
+    // Analysis types this engine can produce
+    Set<String> analysisTypes();
+
+    // Load models; called before the first sentence of every task, must be cheap once loaded
+    void load();
+
+    // One body per requested type, in the same order. A body holds the analysis lines
+    // for the sentence (each ending in a newline), without the SENTENCE header.
+    Result analyze(List<HasWord> sentence,
+                   List<String> types,
+                   GrammaticalStructureFactory gsf) throws Exception;
+
+    // degraded[i]: the body for types[i] came from a cheaper fallback path
+    record Result(String[] bodies, boolean[] degraded) { }
+}
@@ -0,0 +1,77 @@
+package ass1.worker;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Analysis type → engine. A task may pick a specific engine with
+// "<TYPE>@<engine>" (e.g. "DEPENDENCY@nndep"); plain "<TYPE>" uses the default.
+// New engines or types only need to be registered here.
+public class EngineRegistry {
+
+    private static final String ENGINE_SEPARATOR = "@";
+
+    private static final Map<String, AnalysisEngine> engines = new LinkedHashMap<>();
+    private static final Map<String, String> defaults = new LinkedHashMap<>();
+
+    // Engines left out because their model is missing, with the reason
+    private static final Map<String, String> unavailable = new LinkedHashMap<>();
+
+    static {
+        register(new TaggerEngine());
+        register(new PcfgEngine());
+        register(new NeuralDependencyEngine());
+
+        if (ShiftReduceEngine.modelAvailable()) {
+            register(new ShiftReduceEngine());
+        } else {
+            unavailable.put("sr", "model " + ShiftReduceEngine.MODEL
+                    + " is not on the classpath (add the srparser models jar to the worker)");
+        }
+
+        defaults.put("POS", "tagger");
+        defaults.put("CONSTITUENCY", "pcfg");
+        defaults.put("DEPENDENCY", "pcfg");
+    }
+
+    // A requested output: the base analysis type and the engine producing it
+    public record Resolved(String analysisType, AnalysisEngine engine) { }
+
+    public static synchronized void register(AnalysisEngine engine) {
+        engines.put(engine.name(), engine);
+    }
+
+    // Engine name → why it is not registered
+    public static synchronized Map<String, String> unavailable() {
+        return Map.copyOf(unavailable);
+    }
+
+    public static synchronized void setDefault(String analysisType, String engineName) {
+        defaults.put(analysisType, engineName);
+    }
+
+    // "CONSTITUENCY" or "CONSTITUENCY@sr" → (CONSTITUENCY, engine)
+    public static synchronized Resolved resolve(String spec) {
+        String[] p = spec.split(ENGINE_SEPARATOR, 2);
+        String analysisType = p[0];
+        String engineName = (p.length > 1) ? p[1] : defaults.get(analysisType);
+
+        if (engineName == null) {
+            throw new IllegalArgumentException("Unknown analysis type: " + analysisType);
+        }
+
+        AnalysisEngine engine = engines.get(engineName);
+        if (engine == null && unavailable.containsKey(engineName)) {
+            throw new IllegalArgumentException("Engine " + engineName + " is not available: "
+                    + unavailable.get(engineName));
+        }
+        if (engine == null) {
+            throw new IllegalArgumentException("Unknown engine: " + engineName);
+        }
+        if (!engine.analysisTypes().contains(analysisType)) {
+            throw new IllegalArgumentException(
+                    "Engine " + engineName + " does not support " + analysisType);
+        }
+
+        return new Resolved(analysisType, engine);
+    }
+}
@@ -0,0 +1,60 @@
+package ass1.worker;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+// Decides whether a failed task is worth another attempt.
+//
+// Transient: network errors and timeouts, HTTP 5xx / 408 / 429 from the
+// input URL, AWS throttling and 5xx, and client-side SDK failures (no
+// response at all). Permanent: everything else, e.g. a 404 or 403 input URL,
+// an unknown analysis type or engine, or a document the parser rejects.
+// The whole cause chain is checked, so a wrapped timeout still counts.
+public class FailureClassifier {
+
+    // HttpURLConnection reports other statuses only in the message
+    private static final Pattern HTTP_STATUS =
+            Pattern.compile("Server returned HTTP response code: (\\d{3})");
+
+    public static boolean isTransient(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+
+            if (e instanceof AwsServiceException aws) {
+                return aws.isThrottlingException() || aws.statusCode() >= 500;
+            }
+            if (e instanceof SdkClientException) {
+                return true;
+            }
+
+            // 404 from the input URL
+            if (e instanceof FileNotFoundException) {
+                return false;
+            }
+            if (e instanceof InterruptedIOException      // includes SocketTimeoutException
+                    || e instanceof ConnectException
+                    || e instanceof SocketException
+                    || e instanceof UnknownHostException) {
+                return true;
+            }
+            if (e instanceof IOException && e.getMessage() != null) {
+                Matcher m = HTTP_STATUS.matcher(e.getMessage());
+                if (m.find()) {
+                    int status = Integer.parseInt(m.group(1));
+                    return status >= 500 || status == 408 || status == 429;
+                }
+            }
+
+            if (e.getCause() == e) break;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package ass1.worker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.parser.nndep.DependencyParser;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+import edu.stanford.nlp.trees.TypedDependency;
+
+// Neural transition-based dependency parser (nndep, english_UD from the models jar).
+// Much faster than PCFG + conversion; emits basic (not CC-processed) UD relations.
+public class NeuralDependencyEngine implements AnalysisEngine {
+
+    private static DependencyParser parser = null;
+
+    @Override
+    public String name() {
+        return "nndep";
+    }
+
+    @Override
+    public Set<String> analysisTypes() {
+        return Set.of("DEPENDENCY");
+    }
+
+    @Override
+    public void load() {
+        TaggerSingleton.get();
+        parser();
+    }
+
+    private static synchronized DependencyParser parser() {
+        if (parser == null) {
+            System.out.println("[WORKER] Loading Neural Dependency Parser Model...");
+            parser = DependencyParser.loadFromModelFile(DependencyParser.DEFAULT_MODEL);
+            System.out.println("[WORKER] Neural Dependency Parser Loaded.");
+        }
+        return parser;
+    }
+
+    @Override
+    public Result analyze(List<HasWord> sentence,
+                          List<String> types,
+                          GrammaticalStructureFactory gsf) {
+
+        // nndep predicts from tagged words
+        List<TaggedWord> tagged = TaggerSingleton.get().tagSentence(sentence);
+        GrammaticalStructure gs = parser().predict(tagged);
+
+        StringBuilder sb = new StringBuilder();
+        for (TypedDependency td : gs.typedDependencies()) {
+            sb.append(td.toString()).append(TextAnalyzer.NL);
+        }
+
+        String[] bodies = new String[types.size()];
+        Arrays.fill(bodies, sb.toString());
+        return new Result(bodies, new boolean[types.size()]);
+    }
+}
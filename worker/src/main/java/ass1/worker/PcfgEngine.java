@@ -0,0 +1,170 @@
+package ass1.worker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+import edu.stanford.nlp.trees.LabeledScoredTreeFactory;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeFactory;
+import edu.stanford.nlp.trees.TypedDependency;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+// englishPCFG: one exhaustive parse per sentence serves POS, CONSTITUENCY and
+// DEPENDENCY (CC-processed). Each parse runs under a length and time budget;
+// sentences over budget fall back to the tagger and are marked degraded.
+public class PcfgEngine implements AnalysisEngine {
+
+    // Per-sentence budget: longer or slower sentences fall back to a flat, tagged output
+    private static final int MAX_SENTENCE_TOKENS = TextAnalyzer.readIntEnv("MAX_SENTENCE_TOKENS", 120);
+    private static final int PARSE_TIMEOUT_MS = TextAnalyzer.readIntEnv("PARSE_TIMEOUT_MS", 15000);
+
+    // Interrupts parses that run past PARSE_TIMEOUT_MS (the PCFG parser polls the flag)
+    private static final ScheduledExecutorService watchdog =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "parse-watchdog");
+                t.setDaemon(true);
+                return t;
+            });
+
+    @Override
+    public String name() {
+        return "pcfg";
+    }
+
+    @Override
+    public Set<String> analysisTypes() {
+        return Set.of("POS", "CONSTITUENCY", "DEPENDENCY");
+    }
+
+    @Override
+    public void load() {
+        ParserSingleton.get();
+    }
+
+    @Override
+    public Result analyze(List<HasWord> sentence,
+                          List<String> types,
+                          GrammaticalStructureFactory gsf) {
+        LexicalizedParser parser = ParserSingleton.get();
+
+        String[] bodies = new String[types.size()];
+        boolean[] degraded = new boolean[types.size()];
+
+        // Parse once for all types
+        Tree parse = null;
+        String degradedReason;
+        if (sentence.size() > MAX_SENTENCE_TOKENS) {
+            degradedReason = "too long (" + sentence.size() + " tokens)";
+        } else {
+            parse = withTimeout(() -> parser.parse(sentence), PARSE_TIMEOUT_MS);
+            degradedReason = (parse == null) ? "timeout after " + PARSE_TIMEOUT_MS + " ms" : null;
+        }
+
+        // Over budget: tag only and keep going
+        List<TaggedWord> fallbackTags = (parse == null)
+                ? TaggerSingleton.get().tagSentence(sentence)
+                : null;
+
+        for (int i = 0; i < bodies.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            String type = types.get(i);
+
+            if (parse == null && !type.equals("POS")) {
+                sb.append("[DEGRADED: ").append(degradedReason).append("]").append(TextAnalyzer.NL);
+                degraded[i] = true;
+            }
+
+            switch (type) {
+                case "POS" -> {
+                    sb.append(TaggerEngine.taggedLines(
+                            (parse != null) ? parse.taggedYield() : fallbackTags));
+                }
+                case "CONSTITUENCY" -> {
+                    Tree tree = (parse != null) ? parse : flatTree(fallbackTags);
+                    sb.append(tree.pennString()).append(TextAnalyzer.NL);
+                }
+                case "DEPENDENCY" -> {
+                    if (parse != null) {
+                        GrammaticalStructure gs = gsf.newGrammaticalStructure(parse);
+                        for (TypedDependency td : gs.typedDependenciesCCprocessed()) {
+                            sb.append(td.toString()).append(TextAnalyzer.NL);
+                        }
+                    } else {
+                        sb.append(TaggerEngine.taggedLines(fallbackTags));
+                    }
+                }
+            }
+
+            bodies[i] = sb.toString();
+        }
+
+        return new Result(bodies, degraded);
+    }
+
+    // Run a parse under the wall-clock budget; null if the watchdog had to interrupt it.
+    // Only the watchdog's own interrupt is cleared: any other one (e.g. the
+    // lease cap in VisibilityHeartbeat) is still set when this returns.
+    static <T> T withTimeout(Supplier<T> parse, long timeoutMs) {
+        Thread self = Thread.currentThread();
+        Object guard = new Object();
+        boolean[] state = new boolean[2];   // {finished, fired}
+        boolean foreignInterrupt = false;
+
+        ScheduledFuture<?> alarm = watchdog.schedule(() -> {
+            synchronized (guard) {
+                if (!state[0]) {
+                    state[1] = true;
+                    self.interrupt();
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+
+        try {
+            T result = parse.get();
+            synchronized (guard) {
+                return state[1] ? null : result;
+            }
+        } catch (RuntimeException e) {
+            synchronized (guard) {
+                if (state[1]) return null;
+            }
+            // the parser consumed someone else's interrupt to abort
+            foreignInterrupt = e instanceof RuntimeInterruptedException;
+            throw e;
+        } finally {
+            boolean fired;
+            synchronized (guard) {
+                state[0] = true;
+                fired = state[1];
+            }
+            alarm.cancel(false);
+
+            // clear our late interrupt so it cannot leak into I/O, restore anyone else's
+            boolean interrupted = Thread.interrupted();
+            if (!fired && (interrupted || foreignInterrupt)) {
+                self.interrupt();
+            }
+        }
+    }
+
+    // (ROOT (FRAG (TAG word) ...)) — stands in for a tree we could not afford
+    private static Tree flatTree(List<TaggedWord> tagged) {
+        TreeFactory tf = new LabeledScoredTreeFactory();
+        List<Tree> preterminals = new ArrayList<>();
+        for (TaggedWord t : tagged) {
+            preterminals.add(tf.newTreeNode(t.tag(), List.of(tf.newLeaf(t.word()))));
+        }
+        return tf.newTreeNode("ROOT", List.of(tf.newTreeNode("FRAG", preterminals)));
+    }
+}
@@ -0,0 +1,83 @@
+package ass1.worker;
+
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.parser.shiftreduce.ShiftReduceParser;
+import edu.stanford.nlp.trees.GrammaticalStructure;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TypedDependency;
+
+// Shift-reduce constituency parser: linear time on tagged input, slightly less
+// accurate than englishPCFG. The model ships in the separate srparser models jar
+// (stanford-srparser-2015-12-09-models), not in the standard models jar the
+// worker bundles, so EngineRegistry only registers it when the model is found.
+public class ShiftReduceEngine implements AnalysisEngine {
+
+    static final String MODEL = "edu/stanford/nlp/models/srparser/englishSR.ser.gz";
+
+    static boolean modelAvailable() {
+        return ShiftReduceEngine.class.getClassLoader().getResource(MODEL) != null;
+    }
+
+    private static ShiftReduceParser parser = null;
+
+    @Override
+    public String name() {
+        return "sr";
+    }
+
+    @Override
+    public Set<String> analysisTypes() {
+        return Set.of("CONSTITUENCY", "DEPENDENCY");
+    }
+
+    @Override
+    public void load() {
+        TaggerSingleton.get();
+        parser();
+    }
+
+    private static synchronized ShiftReduceParser parser() {
+        if (parser == null) {
+            System.out.println("[WORKER] Loading Shift-Reduce Parser Model...");
+            parser = ShiftReduceParser.loadModel(MODEL);
+            System.out.println("[WORKER] Shift-Reduce Parser Loaded.");
+        }
+        return parser;
+    }
+
+    @Override
+    public Result analyze(List<HasWord> sentence,
+                          List<String> types,
+                          GrammaticalStructureFactory gsf) {
+
+        // The shift-reduce parser expects tagged words
+        List<TaggedWord> tagged = TaggerSingleton.get().tagSentence(sentence);
+        Tree parse = parser().parse(tagged);
+
+        String[] bodies = new String[types.size()];
+        for (int i = 0; i < bodies.length; i++) {
+            StringBuilder sb = new StringBuilder();
+
+            switch (types.get(i)) {
+                case "CONSTITUENCY" -> {
+                    sb.append(parse.pennString()).append(TextAnalyzer.NL);
+                }
+                case "DEPENDENCY" -> {
+                    GrammaticalStructure gs = gsf.newGrammaticalStructure(parse);
+                    for (TypedDependency td : gs.typedDependenciesCCprocessed()) {
+                        sb.append(td.toString()).append(TextAnalyzer.NL);
+                    }
+                }
+            }
+
+            bodies[i] = sb.toString();
+        }
+
+        return new Result(bodies, new boolean[types.size()]);
+    }
+}
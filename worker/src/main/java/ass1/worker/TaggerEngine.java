@@ -0,0 +1,48 @@
+package ass1.worker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+
+// POS tags straight from the MaxentTagger (no parse)
+public class TaggerEngine implements AnalysisEngine {
+
+    @Override
+    public String name() {
+        return "tagger";
+    }
+
+    @Override
+    public Set<String> analysisTypes() {
+        return Set.of("POS");
+    }
+
+    @Override
+    public void load() {
+        TaggerSingleton.get();
+    }
+
+    @Override
+    public Result analyze(List<HasWord> sentence,
+                          List<String> types,
+                          GrammaticalStructureFactory gsf) {
+        String body = taggedLines(TaggerSingleton.get().tagSentence(sentence));
+
+        String[] bodies = new String[types.size()];
+        Arrays.fill(bodies, body);
+        return new Result(bodies, new boolean[types.size()]);
+    }
+
+    // word<TAB>tag per line
+    static String taggedLines(List<TaggedWord> tagged) {
+        StringBuilder sb = new StringBuilder();
+        for (TaggedWord t : tagged) {
+            sb.append(t.word()).append("\t").append(t.tag()).append(TextAnalyzer.NL);
+        }
+        return sb.toString();
+    }
+}
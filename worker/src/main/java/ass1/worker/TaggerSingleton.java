@@ -0,0 +1,20 @@
+package ass1.worker;
+
+import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+
+public class TaggerSingleton {
+
+    private static final String MODEL =
+            "edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger";
+
+    private static MaxentTagger instance = null;
+
+    public static synchronized MaxentTagger get() {
+        if (instance == null) {
+            System.out.println("[WORKER] Loading Stanford POS Tagger Model...");
+            instance = new MaxentTagger(MODEL);
+            System.out.println("[WORKER] Tagger Loaded.");
+        }
+        return instance;
+    }
+}
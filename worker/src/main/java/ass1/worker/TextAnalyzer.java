@@ -7,89 +7,328 @@ import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import edu.stanford.nlp.ling.HasWord;
-import edu.stanford.nlp.ling.TaggedWord;
-import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.process.DocumentPreprocessor;
-import edu.stanford.nlp.trees.GrammaticalStructure;
 import edu.stanford.nlp.trees.GrammaticalStructureFactory;
 import edu.stanford.nlp.trees.PennTreebankLanguagePack;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreePrint;
-import edu.stanford.nlp.trees.TypedDependency;
 
 public class TextAnalyzer {
 
+    static final String NL = System.lineSeparator();
+
+    // Parallel mode: PARSE_THREADS > 1 parses sentence batches on a shared pool
+    private static final int PARSE_THREADS = readIntEnv("PARSE_THREADS", 1);
+    private static final int BATCH_SIZE = readIntEnv("PARSE_BATCH_SIZE", 32);
+
+    // Bound on batches parsed ahead of the writer (keeps memory flat)
+    private static final int MAX_IN_FLIGHT = PARSE_THREADS * 2;
+
+    private static ForkJoinPool pool = null;
+
+    // GrammaticalStructureFactory is not thread-safe: each pool thread has its own
+    private static final ThreadLocal<GrammaticalStructureFactory> poolGsf =
+            ThreadLocal.withInitial(() -> new PennTreebankLanguagePack().grammaticalStructureFactory());
+
+    // Output file of one analysis type, with the number of sentences that hit the budget
+    public record Output(Path file, int degradedSentences) { }
+
+    // Rendered blocks (one per type) for one sentence or a batch of them
+    private record Chunk(String[] blocks, int[] degraded) { }
+
+    // Requested types grouped by engine; indices point back into the request list
+    private record Group(AnalysisEngine engine, List<String> analysisTypes, int[] indices) { }
+
     public static Path performAnalysis(Path input, String type) throws Exception {
+        return performAnalysis(input, type,
+                new PennTreebankLanguagePack().grammaticalStructureFactory());
+    }
 
-        // Output file under /tmp
-        Path output = Paths.get("/tmp/output-" + System.nanoTime() + ".txt");
+    // Callers running several tasks at once pass their own factory (used on
+    // the calling thread; parallel batches use one per pool thread);
+    // the engines themselves are shared and thread-safe.
+    public static Path performAnalysis(Path input,
+                                       String type,
+                                       GrammaticalStructureFactory gsf) throws Exception {
+        return performAnalyses(input, List.of(type), gsf).get(type).file();
+    }
+
+    // Several analysis types over the same input. Types are grouped by engine
+    // (see EngineRegistry) and each engine runs once per sentence for all of
+    // its types, so e.g. one PCFG parse feeds CONSTITUENCY and DEPENDENCY.
+    // Returns one output per type, in the order given.
+    public static Map<String, Output> performAnalyses(Path input,
+                                                    List<String> types,
+                                                    GrammaticalStructureFactory gsf) throws Exception {
 
-        // Load parser components once
-        LexicalizedParser parser = ParserSingleton.get();
-        GrammaticalStructureFactory gsf =
-                new PennTreebankLanguagePack().grammaticalStructureFactory();
+        List<Group> groups = plan(types);
+        for (Group g : groups) {
+            g.engine().load();
+        }
+
+        // Output files under /tmp (unique per call, slots run concurrently)
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < types.size(); i++) {
+            files.add(Paths.get("/tmp/output-" + UUID.randomUUID() + ".txt"));
+        }
 
         long start = System.currentTimeMillis();
-        int sentenceCount = 0;
+        int sentenceCount;
+        int[] degraded = new int[types.size()];
+
+        BufferedWriter[] writers = new BufferedWriter[types.size()];
+        boolean finished = false;
 
         // DocumentPreprocessor streams the file and performs sentence splitting
-        try (FileReader fr = new FileReader(input.toFile());
-             BufferedWriter bw = Files.newBufferedWriter(output)) {
+        try (FileReader fr = new FileReader(input.toFile())) {
+
+            for (int i = 0; i < types.size(); i++) {
+                writers[i] = Files.newBufferedWriter(files.get(i));
+            }
 
             DocumentPreprocessor dp = new DocumentPreprocessor(fr);
 
-            // Iterate over detected sentences
+            if (PARSE_THREADS > 1) {
+                sentenceCount = analyzeParallel(dp, types.size(), groups, writers, degraded);
+            } else {
+                sentenceCount = analyzeSequential(dp, types.size(), groups, gsf, writers, degraded);
+            }
+
+            // the last sentence may have been cut short too
+            checkInterrupted();
+            finished = true;
+
+        } finally {
+            for (BufferedWriter bw : writers) {
+                if (bw != null) bw.close();
+            }
+
+            // the caller only gets (and deletes) the files of a finished analysis
+            if (!finished) {
+                for (Path f : files) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+
+        Map<String, Output> outputs = new LinkedHashMap<>();
+        for (int i = 0; i < types.size(); i++) {
+            outputs.put(types.get(i), new Output(files.get(i), degraded[i]));
+        }
+
+        System.out.println("[WORKER] FINISHED " + types + ". Total sentences: " + sentenceCount
+                + " in " + (System.currentTimeMillis() - start) + " ms");
+        return outputs;
+    }
+
+    private static List<Group> plan(List<String> types) {
+        List<EngineRegistry.Resolved> resolved = new ArrayList<>();
+        for (String type : types) {
+            resolved.add(EngineRegistry.resolve(type));
+        }
+
+        // Each type always comes from its own resolved engine, never from
+        // another one that happens to run too (PCFG tags differ from the
+        // tagger's): results are cached per type, whatever it was fused with
+        Map<AnalysisEngine, List<Integer>> byEngine = new LinkedHashMap<>();
+        Map<AnalysisEngine, List<String>> typesByEngine = new LinkedHashMap<>();
+
+        for (int i = 0; i < resolved.size(); i++) {
+            EngineRegistry.Resolved r = resolved.get(i);
+            byEngine.computeIfAbsent(r.engine(), e -> new ArrayList<>()).add(i);
+            typesByEngine.computeIfAbsent(r.engine(), e -> new ArrayList<>()).add(r.analysisType());
+        }
+
+        List<Group> groups = new ArrayList<>();
+        byEngine.forEach((engine, indices) -> groups.add(new Group(engine,
+                typesByEngine.get(engine),
+                indices.stream().mapToInt(Integer::intValue).toArray())));
+        return groups;
+    }
+
+
+    // ========================================================================
+    // SEQUENTIAL: one sentence at a time on the calling thread
+    // ========================================================================
+    private static int analyzeSequential(DocumentPreprocessor dp,
+                                         int typeCount,
+                                         List<Group> groups,
+                                         GrammaticalStructureFactory gsf,
+                                         BufferedWriter[] writers,
+                                         int[] degraded) throws Exception {
+        int sentenceCount = 0;
+
+        // Iterate over detected sentences
+        for (List<HasWord> sentenceTokens : dp) {
+            checkInterrupted();
+            sentenceCount++;
+
+            if (sentenceCount % 50 == 0) {
+                System.out.println("[WORKER] Parsed " + sentenceCount + " sentences");
+            }
+
+            write(writers, degraded,
+                    analyzeSentence(sentenceCount, sentenceTokens, typeCount, groups, gsf));
+        }
+
+        return sentenceCount;
+    }
+
+
+    // ========================================================================
+    // PARALLEL: bounded batches on the pool, flushed in submission order
+    // ========================================================================
+    private static int analyzeParallel(DocumentPreprocessor dp,
+                                       int typeCount,
+                                       List<Group> groups,
+                                       BufferedWriter[] writers,
+                                       int[] degraded) throws Exception {
+        ForkJoinPool p = pool();
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+
+        int sentenceCount = 0;
+        List<List<HasWord>> batch = new ArrayList<>(BATCH_SIZE);
+
+        try {
             for (List<HasWord> sentenceTokens : dp) {
+                checkInterrupted();
                 sentenceCount++;
+                batch.add(sentenceTokens);
 
-                if (sentenceCount % 50 == 0) {
-                    System.out.println("[WORKER] Parsed " + sentenceCount + " sentences");
-                }
+                if (batch.size() == BATCH_SIZE) {
+                    inFlight.addLast(submitBatch(p, sentenceCount - batch.size() + 1,
+                            batch, typeCount, groups));
+                    batch = new ArrayList<>(BATCH_SIZE);
 
-                try {
-                    Tree parse = parser.parse(sentenceTokens);
-
-                    // Write original sentence text
-                    bw.write("SENTENCE " + sentenceCount + ": " + tokensToString(sentenceTokens));
-                    bw.newLine();
-
-                    // Select analysis type
-                    switch (type) {
-                        case "POS" -> {
-                            for (TaggedWord t : parse.taggedYield()) {
-                                bw.write(t.word() + "\t" + t.tag());
-                                bw.newLine();
-                            }
-                        }
-                        case "CONSTITUENCY" -> {
-                            bw.write(parse.pennString());
-                            bw.newLine();
-                        }
-                        case "DEPENDENCY" -> {
-                            GrammaticalStructure gs = gsf.newGrammaticalStructure(parse);
-                            for (TypedDependency td : gs.typedDependenciesCCprocessed()) {
-                                bw.write(td.toString());
-                                bw.newLine();
-                            }
-                        }
+                    // Writer waits on the oldest batch once enough are queued
+                    while (inFlight.size() >= MAX_IN_FLIGHT) {
+                        write(writers, degraded, await(inFlight.pollFirst()));
                     }
 
-                    bw.newLine();
+                    System.out.println("[WORKER] Queued " + sentenceCount + " sentences");
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                inFlight.addLast(submitBatch(p, sentenceCount - batch.size() + 1,
+                        batch, typeCount, groups));
+            }
 
-                } catch (Exception e) {
-                    // Skip individual sentence errors
-                    bw.write("[ERROR parsing sentence " + sentenceCount + "]");
-                    bw.newLine();
-                    bw.newLine();
+            while (!inFlight.isEmpty()) {
+                write(writers, degraded, await(inFlight.pollFirst()));
+            }
+
+        } catch (Exception e) {
+            // Failed or cancelled (lease expired): free the pool for other tasks
+            inFlight.forEach(f -> f.cancel(true));
+            throw e;
+        }
+
+        return sentenceCount;
+    }
+
+    private static Future<Chunk> submitBatch(ForkJoinPool p,
+                                             int firstIndex,
+                                             List<List<HasWord>> batch,
+                                             int typeCount,
+                                             List<Group> groups) {
+        return p.submit(() -> {
+            GrammaticalStructureFactory gsf = poolGsf.get();
+            StringBuilder[] sbs = new StringBuilder[typeCount];
+            for (int i = 0; i < typeCount; i++) sbs[i] = new StringBuilder();
+            int[] degraded = new int[typeCount];
+
+            int index = firstIndex;
+            for (List<HasWord> sentenceTokens : batch) {
+                Chunk chunk = analyzeSentence(index++, sentenceTokens, typeCount, groups, gsf);
+                for (int i = 0; i < typeCount; i++) {
+                    sbs[i].append(chunk.blocks()[i]);
+                    degraded[i] += chunk.degraded()[i];
                 }
             }
+
+            String[] out = new String[typeCount];
+            for (int i = 0; i < typeCount; i++) out[i] = sbs[i].toString();
+            return new Chunk(out, degraded);
+        });
+    }
+
+    // Set by VisibilityHeartbeat once the task's lease lifetime is exhausted
+    private static void checkInterrupted() throws InterruptedException {
+        if (VisibilityHeartbeat.leaseExpired() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("analysis cancelled");
         }
+    }
 
-        System.out.println("[WORKER] FINISHED. Total sentences: " + sentenceCount);
-        return output;
+    private static Chunk await(Future<Chunk> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception ex) ? ex : e;
+        }
+    }
+
+    private static void write(BufferedWriter[] writers, int[] degraded, Chunk chunk) throws Exception {
+        for (int i = 0; i < writers.length; i++) {
+            writers[i].write(chunk.blocks()[i]);
+            degraded[i] += chunk.degraded()[i];
+        }
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            System.out.println("[WORKER] Sentence pool started with " + PARSE_THREADS + " threads.");
+            pool = new ForkJoinPool(PARSE_THREADS);
+        }
+        return pool;
+    }
+
+
+    // ========================================================================
+    // SINGLE SENTENCE → one output block per type (header, lines, blank line)
+    // ========================================================================
+    private static Chunk analyzeSentence(int sentenceIndex,
+                                         List<HasWord> sentenceTokens,
+                                         int typeCount,
+                                         List<Group> groups,
+                                         GrammaticalStructureFactory gsf) {
+        String[] blocks = new String[typeCount];
+        int[] degraded = new int[typeCount];
+
+        String header = "SENTENCE " + sentenceIndex + ": " + tokensToString(sentenceTokens) + NL;
+
+        // Each engine runs once for all of its types
+        for (Group g : groups) {
+            try {
+                AnalysisEngine.Result r = g.engine().analyze(sentenceTokens, g.analysisTypes(), gsf);
+
+                for (int j = 0; j < g.indices().length; j++) {
+                    int i = g.indices()[j];
+                    blocks[i] = header + r.bodies()[j] + NL;
+                    degraded[i] = r.degraded()[j] ? 1 : 0;
+                }
+
+            } catch (Exception e) {
+                // Skip individual sentence errors
+                for (int i : g.indices()) {
+                    blocks[i] = "[ERROR parsing sentence " + sentenceIndex + "]" + NL + NL;
+                }
+            }
+        }
+
+        return new Chunk(blocks, degraded);
     }
 
     // Convert token list to string
@@ -109,5 +348,14 @@ public class TextAnalyzer {
         new TreePrint("penn3").printTree(tree, pw);
         return sw.toString();
     }
-}
 
+    static int readIntEnv(String name, int def) {
+        String env = System.getenv(name);
+        if (env != null) {
+            try {
+                return Math.max(1, Integer.parseInt(env.trim()));
+            } catch (NumberFormatException ignored) {}
+        }
+        return def;
+    }
+}
@@ -0,0 +1,111 @@
+package ass1.worker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ass1.common.SqsHelper;
+
+// Keeps a received task invisible while it is being processed.
+// The task is received with a short lease; this extends it every lease/3
+// until closed, so a crashed worker's task reappears within one lease.
+// Extensions stop after maxLifetimeSeconds: the owning thread is then
+// interrupted so the task fails, and a hung task cannot hide forever.
+public class VisibilityHeartbeat implements AutoCloseable {
+
+    // The call that extends a lease (SQS by default, a local stand-in in tests)
+    @FunctionalInterface
+    public interface LeaseExtender {
+        void extend(String queueUrl, String receiptHandle, int visibilitySeconds);
+    }
+
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "visibility-heartbeat");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // The open heartbeat of each task thread, for leaseExpired()
+    private static final Map<Thread, VisibilityHeartbeat> byOwner = new ConcurrentHashMap<>();
+
+    private final String queueUrl;
+    private final String receiptHandle;
+    private final int leaseSeconds;
+    private final LeaseExtender extender;
+    private final long expiresAtMillis;
+    private final Thread owner;
+    private final ScheduledFuture<?> beat;
+    private volatile boolean expired = false;
+    private boolean closed = false;      // guarded by this
+
+    public VisibilityHeartbeat(String queueUrl, String receiptHandle, int leaseSeconds, int maxLifetimeSeconds) {
+        this(queueUrl, receiptHandle, leaseSeconds, maxLifetimeSeconds,
+                SqsHelper::changeMessageVisibility, scheduler);
+    }
+
+    public VisibilityHeartbeat(String queueUrl,
+                               String receiptHandle,
+                               int leaseSeconds,
+                               int maxLifetimeSeconds,
+                               LeaseExtender extender,
+                               ScheduledExecutorService scheduler) {
+        this.queueUrl = queueUrl;
+        this.receiptHandle = receiptHandle;
+        this.leaseSeconds = leaseSeconds;
+        this.extender = extender;
+        this.expiresAtMillis = System.currentTimeMillis() + maxLifetimeSeconds * 1000L;
+        this.owner = Thread.currentThread();
+        byOwner.put(owner, this);
+
+        long periodMillis = Math.max(1000L, leaseSeconds * 1000L / 3);
+        this.beat = scheduler.scheduleAtFixedRate(this::extend,
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void extend() {
+        if (System.currentTimeMillis() >= expiresAtMillis) {
+            synchronized (this) {
+                // never interrupt an owner that has moved on to its next task
+                if (closed) return;
+                expired = true;
+                beat.cancel(false);
+                owner.interrupt();
+            }
+            System.err.println("[WORKER] Lease lifetime exhausted, cancelling task.");
+            return;
+        }
+
+        try {
+            extender.extend(queueUrl, receiptHandle, leaseSeconds);
+        } catch (Exception e) {
+            // Keep beating: a single failed extension still leaves 2/3 of the lease
+            System.err.println("[WORKER] Heartbeat failed: " + e.getMessage());
+        }
+    }
+
+    // The task ran past its maximum lifetime
+    public boolean expired() {
+        return expired;
+    }
+
+    // The task on the calling thread ran past its maximum lifetime. Unlike the
+    // interrupt, this cannot be swallowed by code that clears the flag.
+    public static boolean leaseExpired() {
+        VisibilityHeartbeat h = byOwner.get(Thread.currentThread());
+        return h != null && h.expired;
+    }
+
+    // Stop extending (the task is done, or its message was deleted).
+    // Called by the owner; clears a pending cancel so the failure can still be reported.
+    @Override
+    public synchronized void close() {
+        closed = true;
+        beat.cancel(false);
+        byOwner.remove(owner, this);
+        if (expired) Thread.interrupted();
+    }
+}
@@ -0,0 +1,63 @@
+package ass1.worker;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.process.DocumentPreprocessor;
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+
+// Loads the models and runs every analysis path once on a sample sentence,
+// so the first real task does not pay for model loading or JIT warm-up.
+// A worker in a POS-only pool never loads the parser, and vice versa.
+public class WarmUp {
+
+    private static final String SAMPLE =
+            "The quick brown fox jumps over the lazy dog near the river bank.";
+
+    private static final List<String> ALL_TYPES = List.of("POS", "CONSTITUENCY", "DEPENDENCY");
+
+    // Run in the background while the worker connects to SQS
+    public static CompletableFuture<Long> startAsync(Collection<String> analysisTypes) {
+        return CompletableFuture.supplyAsync(() -> run(analysisTypes));
+    }
+
+    public static long run() {
+        return run(ALL_TYPES);
+    }
+
+    // Warms the paths of the given base types; returns the warm-up time in ms
+    public static long run(Collection<String> analysisTypes) {
+        long start = System.currentTimeMillis();
+
+        boolean tag = analysisTypes.contains("POS");
+        boolean parse = analysisTypes.contains("CONSTITUENCY") || analysisTypes.contains("DEPENDENCY");
+
+        if (parse) ParserSingleton.get();
+        if (tag) TaggerSingleton.get();
+
+        List<HasWord> sentence = new DocumentPreprocessor(new StringReader(SAMPLE)).iterator().next();
+
+        if (parse) ParserSingleton.get().parse(sentence);
+        if (tag) TaggerSingleton.get().tagSentence(sentence);
+        if (analysisTypes.contains("DEPENDENCY")) {
+            new PennTreebankLanguagePack().grammaticalStructureFactory()
+                    .newGrammaticalStructure(ParserSingleton.get().parse(sentence))
+                    .typedDependenciesCCprocessed();
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("[WORKER] Warm-up finished in " + elapsed + " ms.");
+        return elapsed;
+    }
+
+    // Entry point for the startup benchmark: prints time from JVM start to first parse
+    public static void main(String[] args) {
+        run();
+        long sinceJvmStart = ManagementFactory.getRuntimeMXBean().getUptime();
+        System.out.println("FIRST_PARSE_MS=" + sinceJvmStart);
+    }
+}
@@ -1,120 +1,359 @@
 package ass1.worker;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
-import ass1.common.AWS;
 import ass1.common.MessageFormatter;
 import ass1.common.MessageFormatter.AnalyzeFields;
 import ass1.common.MessageType;
-import ass1.common.S3Helper;
+import ass1.common.ResultCache;
 import ass1.common.SqsHelper;
+import ass1.common.WorkerPools;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
 import software.amazon.awssdk.services.sqs.model.Message;
 
 public class Worker {
 
-    private static final String WORKER_TASKS_QUEUE = "worker-tasks-queue";
     private static final String WORKER_RESULTS_QUEUE = "worker-results-queue";
 
-    private static final String BUCKET = AWS.getInstance().bucketName;
+    // Number of concurrent task slots (env WORKER_SLOTS, default = #cores)
+    private static final int SLOTS = readIntEnv("WORKER_SLOTS",
+            Runtime.getRuntime().availableProcessors());
+
+    // Initial visibility of a received task, kept alive by VisibilityHeartbeat
+    private static final int LEASE_SECONDS = readIntEnv("LEASE_SECONDS", 60);
+
+    // A task still running after this long is failed (permanently) and its
+    // lease released, so a hung download or parse cannot hold a slot forever
+    private static final int MAX_LEASE_SECONDS = readIntEnv("MAX_LEASE_SECONDS", 3600);
+
+    // Connect and read timeouts for input downloads
+    private static final int DOWNLOAD_TIMEOUT_MS = readIntEnv("DOWNLOAD_TIMEOUT_SEC", 30) * 1000;
+
+    // Analysis types this worker serves (env WORKER_TYPES, default = every
+    // pool's types); it polls the queue of each pool holding one of them
+    private static final List<String> TYPES = readTypesEnv();
+
+    // Transient failures (see FailureClassifier) are retried up to MAX_ATTEMPTS
+    // in total, re-queued with a delay drawn from [1, RETRY_BASE_SEC × 2^(attempt-1)]
+    // (exponential backoff, full jitter, capped at the SQS maximum of 900 s).
+    // A task still failing after that goes to the dead-letter queue.
+    private static final int MAX_ATTEMPTS = readIntEnv("MAX_ATTEMPTS", 5);
+    private static final int RETRY_BASE_SEC = readIntEnv("RETRY_BASE_SEC", 5);
+    private static final int MAX_DELAY_SEC = 900;
+
+    // set in main before any slot starts
+    private static String deadLetterQueueUrl;
 
     public static void main(String[] args) {
 
         // Worker identity (for logs)
         String workerId = UUID.randomUUID().toString().substring(0, 6);
-        System.out.println("[WORKER " + workerId + "] Booted and ready.");
+        System.out.println("[WORKER " + workerId + "] Booted. Warming up...");
+
+        // Engines whose model is missing are reported now, not at their first task
+        EngineRegistry.unavailable().forEach((engine, reason) ->
+                System.err.println("[WORKER " + workerId + "] Engine " + engine + " disabled: " + reason));
+
+        // Load and warm only the models of the subscribed types while connecting to SQS
+        CompletableFuture<Long> warm = WarmUp.startAsync(TYPES);
+
+        List<WorkerPools.Pool> pools = WorkerPools.forTypes(TYPES);
+        List<String> tasksQueueUrls = new ArrayList<>();
+        for (WorkerPools.Pool pool : pools) {
+            tasksQueueUrls.add(WorkerPools.createQueue(pool));
 
-        String tasksQueueUrl = SqsHelper.createQueueIfNotExists(WORKER_TASKS_QUEUE);
+            if (!TYPES.containsAll(pool.analysisTypes())) {
+                System.out.println("[WORKER " + workerId + "] Pool " + pool.name()
+                        + " also carries " + pool.analysisTypes() + "; serving those too.");
+            }
+        }
         String resultsQueueUrl = SqsHelper.createQueueIfNotExists(WORKER_RESULTS_QUEUE);
+        deadLetterQueueUrl = SqsHelper.createQueueIfNotExists(WorkerPools.DEAD_LETTER_QUEUE);
+
+        // Only take tasks once warm
+        long warmMs = warm.join();
+
+        // at least one slot per subscribed queue
+        int slots = Math.max(SLOTS, tasksQueueUrls.size());
+
+        System.out.println("[WORKER " + workerId + "] Online with " + slots
+                + " slot(s) for pool(s) " + pools.stream().map(WorkerPools.Pool::name).toList()
+                + ", warm after " + warmMs + " ms. Awaiting ANALYZE tasks...");
+
+        // Each slot polls on its own, so one task's download/upload
+        // overlaps another task's parse. Slots are spread over the pool queues.
+        for (int i = 0; i < slots; i++) {
+            String slotId = workerId + "/" + i;
+            String tasksQueueUrl = tasksQueueUrls.get(i % tasksQueueUrls.size());
+            Thread t = new Thread(() -> runSlot(slotId, tasksQueueUrl, resultsQueueUrl),
+                    "worker-slot-" + i);
+            t.start();
+        }
+    }
 
-        System.out.println("[WORKER " + workerId + "] Online. Awaiting ANALYZE tasks...");
+
+    // ========================================================================
+    // SLOT LOOP: receive → analyze → upload → report
+    // ========================================================================
+    private static void runSlot(String slotId, String tasksQueueUrl, String resultsQueueUrl) {
+
+        // LexicalizedParser is shared; the structure factory stays per slot
+        GrammaticalStructureFactory gsf =
+                new PennTreebankLanguagePack().grammaticalStructureFactory();
 
         while (true) {
 
-            List<Message> messages =
-                    SqsHelper.receiveMessages(tasksQueueUrl, 1, 3600);  // 30 minutes visibility
+            try {
+                List<Message> messages =
+                        SqsHelper.receiveMessages(tasksQueueUrl, 1, LEASE_SECONDS);
 
-            for (Message msg : messages) {
+                for (Message msg : messages) {
+                    handleMessage(slotId, msg, gsf, tasksQueueUrl, resultsQueueUrl);
+                }
 
-                String body = msg.body();
-                MessageType type = MessageFormatter.getMessageType(body);
+            } catch (Exception e) {
+                System.err.println("[WORKER " + slotId + "] Poll failed: " + e.getMessage());
+            }
 
-                if (type != MessageType.ANALYZE) {
-                    System.out.println("[WORKER " + workerId + "] Ignored non-ANALYZE: " + type);
-                    SqsHelper.deleteMessage(tasksQueueUrl, msg.receiptHandle());
-                    continue;
+            try { Thread.sleep(300); }
+            catch (InterruptedException ignored) {}
+        }
+    }
+
+
+    private static void handleMessage(String slotId,
+                                      Message msg,
+                                      GrammaticalStructureFactory gsf,
+                                      String tasksQueueUrl,
+                                      String resultsQueueUrl) {
+
+        String body = msg.body();
+        MessageType type = MessageFormatter.getMessageType(body);
+
+        if (type != MessageType.ANALYZE) {
+            System.out.println("[WORKER " + slotId + "] Ignored non-ANALYZE: " + type);
+            SqsHelper.deleteMessage(tasksQueueUrl, msg.receiptHandle());
+            return;
+        }
+
+        AnalyzeFields task = MessageFormatter.parseAnalyzeTask(body);
+        List<String> analysisTypes = task.analysisTypes();
+        List<Integer> taskIndices = task.taskIndices();
+        String url = task.url();
+        String jobId = task.jobId();
+        int retries = task.attempt() - 1;
+
+        System.out.printf(
+                "[WORKER %s] START | job=%s | type=%s | url=%s | attempt=%d%n",
+                slotId, jobId, analysisTypes, url, task.attempt()
+        );
+
+        VisibilityHeartbeat lease = new VisibilityHeartbeat(
+                tasksQueueUrl, msg.receiptHandle(), LEASE_SECONDS, MAX_LEASE_SECONDS);
+
+        try (lease) {
+
+            // 1) Download once for every requested type
+            byte[] inputBytes = downloadUrl(url);
+            String inputHash = ResultCache.sha256Hex(inputBytes);
+
+            // 2) Reuse results already computed for these exact bytes
+            List<String> distinctTypes = new ArrayList<>(new LinkedHashSet<>(analysisTypes));
+            Map<String, ResultCache.Entry> results = new HashMap<>();
+            List<String> missingTypes = new ArrayList<>();
+            long analysisMs = 0;   // reported so the Manager can learn per-type costs
+
+            for (String analysisType : distinctTypes) {
+                String resultKey = ResultCache.resultKey(inputHash, analysisType);
+                ResultCache.Entry cached = ResultCache.findResult(resultKey);
+                if (cached != null) {
+                    System.out.printf("[WORKER %s] CACHE HIT | type=%s | key=%s%n",
+                            slotId, analysisType, resultKey);
+                    results.put(analysisType, cached);
+                } else {
+                    missingTypes.add(analysisType);
                 }
+            }
 
-                AnalyzeFields task = MessageFormatter.parseAnalyzeTask(body);
-                String analysisType = task.analysisType();
-                String url = task.url();
-                String jobId = task.jobId();
+            if (!missingTypes.isEmpty()) {
 
-                System.out.printf(
-                        "[WORKER %s] START | job=%s | type=%s | url=%s%n",
-                        workerId, jobId, analysisType, url
-                );
+                // 3) Run analysis (each sentence parsed once for all missing types)
+                long analysisStart = System.currentTimeMillis();
+                Path inputPath = writeToTemp(inputBytes);
+                Map<String, TextAnalyzer.Output> outputs = Map.of();
 
                 try {
+                    outputs = TextAnalyzer.performAnalyses(inputPath, missingTypes, gsf);
+
+                    // 4) Upload to S3 under the content-addressed key (degraded output
+                    //    under a one-off key, so the next job parses it again)
+                    for (String analysisType : missingTypes) {
+                        TextAnalyzer.Output out = outputs.get(analysisType);
+                        String resultKey = out.degradedSentences() > 0
+                                ? ResultCache.degradedKey(inputHash, analysisType)
+                                : ResultCache.resultKey(inputHash, analysisType);
+
+                        ResultCache.storeResult(resultKey, out.file(), out.degradedSentences());
+                        results.put(analysisType, new ResultCache.Entry(resultKey, out.degradedSentences()));
+                    }
+                    analysisMs = System.currentTimeMillis() - analysisStart;
+
+                } finally {
+                    // Temp files are per task: don't let /tmp fill up on a long-running worker
+                    deleteQuietly(inputPath);
+                    outputs.values().forEach(out -> deleteQuietly(out.file()));
+                }
+            }
+
+            // Point <url, type> at the result so the Manager can skip it next time
+            for (String analysisType : distinctTypes) {
+                ResultCache.rememberUrl(url, analysisType, results.get(analysisType));
+            }
 
-                    // 1) Download
-                    Path inputPath = downloadUrlToTemp(url);
+            // 5) Send one DONE per requested line, so each is reported separately
+            for (int i = 0; i < analysisTypes.size(); i++) {
+                String analysisType = analysisTypes.get(i);
+                ResultCache.Entry result = results.get(analysisType);
+                String resultMessage = MessageFormatter.formatWorkerDone(
+                        jobId, analysisType, url, taskIndices.get(i),
+                        result.resultKey(), result.degradedSentences(),
+                        missingTypes.contains(analysisType) ? analysisMs : 0L,
+                        inputBytes.length,
+                        retries);
 
-                    // 2) Run analysis
-                    Path resultFile = TextAnalyzer.performAnalysis(inputPath, analysisType);
+                System.out.printf(
+                        "[WORKER %s] DONE | job=%s | task=%d | type=%s | url=%s | key=%s | degraded=%d%n",
+                        slotId, jobId, taskIndices.get(i), analysisType, url,
+                        result.resultKey(), result.degradedSentences()
+                );
 
-                    // 3) Upload to S3
-                    String uniqueKey = "results/" +
-                            jobId + "-" +
-                            analysisType + "-" +
-                            UUID.randomUUID() + ".txt";
+                SqsHelper.sendMessage(resultsQueueUrl, resultMessage);
+            }
 
-                    S3Helper.uploadFile(BUCKET, uniqueKey, resultFile);
+        } catch (Exception e) {
 
-                    // 4) Send DONE
-                    String resultMessage = MessageFormatter.formatWorkerDone(
-                            jobId, analysisType, url, uniqueKey);
+            // Ran past MAX_LEASE_SECONDS: another attempt would most likely hang too
+            boolean transientFailure = !lease.expired() && FailureClassifier.isTransient(e);
+            String reason = lease.expired()
+                    ? "task exceeded MAX_LEASE_SECONDS (" + MAX_LEASE_SECONDS + " s)"
+                    : e.getMessage();
 
-                    System.out.printf(
-                            "[WORKER %s] DONE | job=%s | type=%s | url=%s | key=%s%n",
-                            workerId, jobId, analysisType, url, uniqueKey
-                    );
+            // Another attempt later: the retry is queued before this copy is deleted
+            if (transientFailure && task.attempt() < MAX_ATTEMPTS) {
+                int delay = backoffSeconds(task.attempt());
+                SqsHelper.sendMessage(tasksQueueUrl,
+                        MessageFormatter.formatAnalyzeRetry(task, task.attempt() + 1), delay);
 
-                    SqsHelper.sendMessage(resultsQueueUrl, resultMessage);
+                // so the Manager does not take the backoff for a straggler
+                SqsHelper.sendMessage(resultsQueueUrl, MessageFormatter.formatWorkerRetry(
+                        jobId, url, taskIndices, task.attempt() + 1, delay));
 
-                } catch (Exception e) {
+                System.err.printf(
+                        "[WORKER %s] RETRY | job=%s | type=%s | url=%s | attempt=%d | in=%ds | reason=%s%n",
+                        slotId, jobId, analysisTypes, url, task.attempt(), delay, reason
+                );
 
-                    System.err.printf(
-                            "[WORKER %s] ERROR | job=%s | type=%s | url=%s | reason=%s%n",
-                            workerId, jobId, analysisType, url, e.getMessage()
-                    );
+                SqsHelper.deleteMessage(tasksQueueUrl, msg.receiptHandle());
+                return;
+            }
 
-                    String errMsg = MessageFormatter.formatWorkerError(
-                            jobId, analysisType, url, e.getMessage());
+            System.err.printf(
+                    "[WORKER %s] ERROR | job=%s | type=%s | url=%s | %s | reason=%s%n",
+                    slotId, jobId, analysisTypes, url,
+                    transientFailure ? "dead-lettered after " + task.attempt() + " attempts" : "permanent",
+                    reason
+            );
 
-                    SqsHelper.sendMessage(resultsQueueUrl, errMsg);
-                }
+            for (int i = 0; i < analysisTypes.size(); i++) {
+                String errMsg = MessageFormatter.formatWorkerError(
+                        jobId, analysisTypes.get(i), url, taskIndices.get(i), reason,
+                        retries, transientFailure);
 
-                // Always delete message after work
-                SqsHelper.deleteMessage(tasksQueueUrl, msg.receiptHandle());
+                SqsHelper.sendMessage(resultsQueueUrl, errMsg);
             }
 
-            try { Thread.sleep(300); }
-            catch (InterruptedException ignored) {}
+            // Out of attempts: keep the task for inspection or a later redrive.
+            // Marked as reported, so the Manager does not record it a second time.
+            if (transientFailure) {
+                SqsHelper.sendMessage(deadLetterQueueUrl, MessageFormatter.formatAnalyzeDeadLettered(task));
+            }
         }
+
+        // Always delete message after work
+        SqsHelper.deleteMessage(tasksQueueUrl, msg.receiptHandle());
     }
 
 
-    private static Path downloadUrlToTemp(String url) throws IOException {
+    // full jitter: uniform in [1, min(900, base × 2^(attempt-1))]
+    private static int backoffSeconds(int attempt) {
+        long cap = Math.min(MAX_DELAY_SEC, (long) RETRY_BASE_SEC << Math.min(attempt - 1, 20));
+        return 1 + ThreadLocalRandom.current().nextInt((int) Math.max(1, cap));
+    }
+
+
+    private static int readIntEnv(String name, int def) {
+        String env = System.getenv(name);
+        if (env != null) {
+            try {
+                return Math.max(1, Integer.parseInt(env.trim()));
+            } catch (NumberFormatException ignored) {}
+        }
+        return Math.max(1, def);
+    }
+
+
+    private static List<String> readTypesEnv() {
+        String env = System.getenv("WORKER_TYPES");
+        List<String> types = new ArrayList<>();
+
+        if (env != null) {
+            for (String type : env.split(",")) {
+                if (!type.isBlank()) types.add(WorkerPools.baseType(type));
+            }
+        }
+        if (types.isEmpty()) {
+            WorkerPools.all().forEach(p -> types.addAll(p.analysisTypes()));
+        }
+        return types;
+    }
+
+
+    private static byte[] downloadUrl(String url) throws IOException {
         System.out.println("[WORKER] Downloading: " + url);
-        byte[] bytes = URI.create(url).toURL().openStream().readAllBytes();
+        URLConnection conn = URI.create(url).toURL().openConnection();
+        conn.setConnectTimeout(DOWNLOAD_TIMEOUT_MS);
+        conn.setReadTimeout(DOWNLOAD_TIMEOUT_MS);
+
+        try (InputStream in = conn.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("[WORKER] Could not delete " + path + ": " + e.getMessage());
+        }
+    }
 
-        Path tmp = Paths.get("/tmp/input-" + System.nanoTime() + ".txt");
+    private static Path writeToTemp(byte[] bytes) throws IOException {
+        Path tmp = Paths.get("/tmp/input-" + UUID.randomUUID() + ".txt");
         Files.write(tmp, bytes);
 
         return tmp;
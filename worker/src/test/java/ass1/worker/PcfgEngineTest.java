@@ -0,0 +1,58 @@
+package ass1.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+// The parse watchdog may only clear its own interrupt: one from anyone else
+// (VisibilityHeartbeat at the lease cap) has to survive the parse.
+public class PcfgEngineTest {
+
+    @After
+    public void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void foreignInterruptDuringParseSurvives() {
+        String result = PcfgEngine.withTimeout(() -> {
+            Thread.currentThread().interrupt();
+            return "tree";
+        }, 10_000);
+
+        assertEquals("tree", result);
+        assertTrue("interrupt was swallowed", Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void foreignInterruptConsumedByParserIsRestored() {
+        // the PCFG parser polls Thread.interrupted() and aborts, clearing the flag
+        assertThrows(RuntimeInterruptedException.class, () -> PcfgEngine.withTimeout(() -> {
+            Thread.currentThread().interrupt();
+            if (Thread.interrupted()) throw new RuntimeInterruptedException();
+            return "tree";
+        }, 10_000));
+
+        assertTrue("interrupt was swallowed", Thread.currentThread().isInterrupted());
+    }
+
+    @Test(timeout = 10_000)
+    public void watchdogInterruptIsCleared() {
+        String result = PcfgEngine.withTimeout(() -> {
+            while (!Thread.interrupted()) {
+                Thread.onSpinWait();
+            }
+            throw new RuntimeInterruptedException();
+        }, 50);
+
+        assertNull(result);
+        assertFalse("watchdog interrupt leaked", Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,43 @@
+package ass1.worker;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class VisibilityHeartbeatTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void stop() {
+        scheduler.shutdownNow();
+        Thread.interrupted();
+    }
+
+    @Test(timeout = 10_000)
+    public void expiryOutlivesAClearedInterrupt() throws Exception {
+        VisibilityHeartbeat lease = new VisibilityHeartbeat("queue", "receipt", 1, 0,
+                (queueUrl, receiptHandle, seconds) -> { }, scheduler);
+
+        try {
+            while (!lease.expired()) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException expected) {
+            // the heartbeat interrupts its owner at the cap
+        }
+
+        // code that swallows the interrupt still sees the expiry
+        Thread.interrupted();
+        assertTrue(VisibilityHeartbeat.leaseExpired());
+
+        lease.close();
+        assertFalse(VisibilityHeartbeat.leaseExpired());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}